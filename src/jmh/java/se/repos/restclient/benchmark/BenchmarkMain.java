@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports allocation rate per operation.
+ * 
+ * Use <code>mvn -Pbenchmark test-compile exec:exec</code>,
+ * JMH options can be passed using for example <code>-Djmh.args=RestURL</code>.
+ * Latency percentiles are reported for the benchmarks in sample time mode.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>();
+		for (String a : args) {
+			if (a.trim().length() > 0) {
+				jmhArgs.addAll(List.of(a.trim().split("\\s+")));
+			}
+		}
+		CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+		Options options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+	
+}
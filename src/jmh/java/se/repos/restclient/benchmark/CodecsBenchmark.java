@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.base.Codecs;
+import se.repos.restclient.base.ResponseHeadersMap;
+
+/**
+ * Per-request helpers: BASIC authentication encoding and header rendering for logging and errors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecsBenchmark {
+
+	private String credentials;
+	private ResponseHeaders headers;
+	
+	@Setup
+	public void setUp() {
+		credentials = "someuser:s3cr3t-pässwörd";
+		Map<String, List<String>> map = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		map.put("Content-Type", Arrays.asList("application/json; charset=utf-8"));
+		map.put("Content-Length", Arrays.asList("12345"));
+		map.put("ETag", Arrays.asList("\"abcdef0123456789\""));
+		map.put("Last-Modified", Arrays.asList("Tue, 15 Nov 1994 12:45:26 GMT"));
+		map.put("Cache-Control", Arrays.asList("max-age=60"));
+		map.put("Set-Cookie", Arrays.asList("a=b; Path=/", "c=d; Path=/"));
+		map.put("Date", Arrays.asList("Tue, 15 Nov 1994 08:12:31 GMT"));
+		headers = new ResponseHeadersMap(map) {
+			@Override
+			public int getStatus() {
+				return 200;
+			}
+			@Override
+			public String getContentType() {
+				return "application/json; charset=utf-8";
+			}
+		};
+	}
+	
+	@Benchmark
+	public String base64encode() {
+		return Codecs.base64encode(credentials);
+	}
+	
+	@Benchmark
+	public String headersToString() {
+		return headers.toString();
+	}
+	
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.javase.RestClientJavaHttp;
+import se.repos.restclient.server.UnitHttpServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * End-to-end GET and HEAD against the embedded server,
+ * sample time mode to get latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class RestClientJavaHttpBenchmark {
+
+	@Param({"100", "65536"})
+	int bodySize;
+	
+	private UnitHttpServer server;
+	private RestClientJavaHttp client;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		final byte[] body = new byte[bodySize];
+		server = UnitHttpServer.create();
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.getResponseHeaders().set("Content-Type", "application/octet-stream");
+				if ("HEAD".equals(e.getRequestMethod())) {
+					e.sendResponseHeaders(200, -1);
+				} else {
+					e.sendResponseHeaders(200, body.length);
+					e.getResponseBody().write(body);
+				}
+				e.close();
+			}
+		});
+		server.start();
+		client = new RestClientJavaHttp(server.getRoot().toString(), null);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+	}
+	
+	@Setup(Level.Iteration)
+	public void clearLog() {
+		// The server keeps every exchange in memory
+		server.getLog().clear();
+	}
+	
+	@Benchmark
+	public void get(final Blackhole bh) throws IOException {
+		client.get("/resource", new RestResponse() {
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				return new OutputStream() {
+					@Override
+					public void write(int b) {
+						bh.consume(b);
+					}
+					@Override
+					public void write(byte[] b, int off, int len) {
+						bh.consume(b);
+					}
+				};
+			}
+		});
+	}
+	
+	@Benchmark
+	public ResponseHeaders head() throws IOException {
+		return client.head("/resource");
+	}
+	
+}
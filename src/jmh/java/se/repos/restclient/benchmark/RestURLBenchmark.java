@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se.repos.restclient.RestURL;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestURLBenchmark {
+
+	@Param({"1", "10", "40"})
+	int params;
+	
+	private String[] values;
+	private String built;
+	
+	@Setup
+	public void setUp() {
+		values = new String[params];
+		for (int i = 0; i < params; i++) {
+			values[i] = "value " + i + " with/reserved&chars=åäö";
+		}
+		built = chain().toString();
+	}
+	
+	private RestURL chain() {
+		RestURL url = new RestURL("http://localhost:8080/some/resource.xml");
+		for (int i = 0; i < values.length; i++) {
+			url.q("p" + (i % 5), values[i]);
+		}
+		return url;
+	}
+	
+	@Benchmark
+	public RestURL construct() {
+		return new RestURL("http://localhost:8080/some/resource.xml?a=b");
+	}
+	
+	@Benchmark
+	public String qChain() {
+		return chain().toString();
+	}
+	
+	/**
+	 * Parses on a new instance each time, as the parsed query is kept until a parameter is added.
+	 * Includes construction, compare with {@link #construct()}.
+	 */
+	@Benchmark
+	public void getQuery(Blackhole blackhole) {
+		blackhole.consume(new RestURL(built).getQuery());
+	}
+	
+}
@@ -31,9 +31,13 @@
 package se.repos.restclient;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 
 /**
- * Error thrown if we got a connection but the server returned a non-200 status code.
+ * Error thrown if we got a connection but the server returned a non-2xx status code.
  * The String from {@link #getMessage()} looks like the IOException that HttpURLConnection.getInputStream
  * throws but this class also provides access to the status code.
  * The repsonse body, i.e. the error message from the server, is accessed using {@link #getResponse()}.
@@ -44,7 +48,9 @@ public class HttpStatusError extends IOException {
 	private int status;
 	private String url;
 	private ResponseHeaders headers;
-	private String body;
+	private byte[] bodyBytes;
+	private boolean truncated = false;
+	private volatile String body;
 
 	/**
 	 * @param httpStatus <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec10.html">status code</a> from the server
@@ -58,6 +64,16 @@ public class HttpStatusError extends IOException {
 		this.body = body;
 	}
 	
+	/**
+	 * @param body as received, decoded using the charset from Content-Type when {@link #getResponse()} is called
+	 * @param truncated true if the body was longer than what was kept
+	 */
+	public HttpStatusError(String url, ResponseHeaders headers, byte[] body, boolean truncated) {
+		this(url, headers, (String) null);
+		this.bodyBytes = body;
+		this.truncated = truncated;
+	}
+	
 	public ResponseHeaders getHeaders() {
 		return this.headers;
 	}
@@ -80,7 +96,39 @@ public class HttpStatusError extends IOException {
 	 * @return Response body from server, assumed to be readable as text or html source
 	 */
 	public String getResponse() {
+		if (body == null && bodyBytes != null) {
+			body = new String(bodyBytes, getCharset(headers));
+		}
 		return body;
 	}
 	
+	/**
+	 * @return true if the server sent a longer body than the client kept, see {@link #getResponse()}
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * @return charset parameter of Content-Type, UTF-8 if missing or unsupported
+	 */
+	static Charset getCharset(ResponseHeaders headers) {
+		String contentType = headers.getContentType();
+		if (contentType == null) {
+			return StandardCharsets.UTF_8;
+		}
+		for (String param : contentType.split(";")) {
+			int eq = param.indexOf('=');
+			if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+				String name = param.substring(eq + 1).trim().replace("\"", "");
+				try {
+					return Charset.forName(name);
+				} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+					break;
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+	
 }
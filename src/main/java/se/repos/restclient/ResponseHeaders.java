@@ -15,13 +15,20 @@
  */
 package se.repos.restclient;
 
+import java.net.http.HttpHeaders;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Response headers as a read-only map, with accessors for the headers that clients commonly need.
+ * 
+ * Implementations backed by a case insensitive map, like the java.net.http client's,
+ * should override the accessors to avoid the fallback scan.
+ */
 public interface ResponseHeaders extends Map<String, List<String>> {
 
-	// TODO: Consider exposing the Java 11 HttpHeaders instance (very good modern API)
-	
 	String getContentType();
 
 	/**
@@ -29,4 +36,73 @@ public interface ResponseHeaders extends Map<String, List<String>> {
 	 */
 	int getStatus();
 	
+	/**
+	 * @param name header name, case insensitive
+	 * @return the first value, null if the header is missing
+	 */
+	default String getFirst(String name) {
+		List<String> values = getValues(name);
+		return values.isEmpty() ? null : values.get(0);
+	}
+	
+	/**
+	 * @param name header name, case insensitive
+	 * @return all values in the order received, empty if the header is missing
+	 */
+	default List<String> getValues(String name) {
+		List<String> values = get(name);
+		if (values == null) {
+			for (Map.Entry<String, List<String>> e : entrySet()) {
+				if (name.equalsIgnoreCase(e.getKey())) {
+					values = e.getValue();
+					break;
+				}
+			}
+		}
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+	
+	/**
+	 * @return Content-Length as sent, i.e. the encoded length for compressed responses, -1 if missing or invalid
+	 */
+	default long getContentLength() {
+		String value = getFirst("Content-Length");
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return ETag including quotes and weak prefix, null if missing
+	 */
+	default String getETag() {
+		return getFirst("ETag");
+	}
+	
+	/**
+	 * @return Last-Modified as an HTTP-date string, null if missing
+	 */
+	default String getLastModified() {
+		return getFirst("Last-Modified");
+	}
+	
+	/**
+	 * @return the java.net.http representation, the client's own instance where available, otherwise a copy
+	 */
+	default HttpHeaders getHttpHeaders() {
+		Map<String, List<String>> map = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		for (Map.Entry<String, List<String>> e : entrySet()) {
+			// Status line has null key in some clients
+			if (e.getKey() != null && e.getValue() != null) {
+				map.putIfAbsent(e.getKey(), e.getValue());
+			}
+		}
+		return HttpHeaders.of(map, (name, value) -> true);
+	}
+	
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+/**
+ * Headers of a response that the client received compressed and decompressed,
+ * i.e. the body written to {@link RestResponse#getResponseStream(ResponseHeaders)} is decoded.
+ * 
+ * The Content-Encoding header is kept as sent by the server.
+ * Lengths are known when the body has been read, i.e. after the get method has returned.
+ */
+public interface ResponseHeadersDecoded extends ResponseHeaders {
+
+	/**
+	 * @return the encoding that was decoded, for example gzip
+	 */
+	String getContentEncoding();
+	
+	/**
+	 * @return body bytes received from the server, -1 if the body has not been read
+	 */
+	long getEncodedLength();
+	
+	/**
+	 * @return body bytes after decoding, -1 if the body has not been read
+	 */
+	long getDecodedLength();
+	
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-blocking variant of {@link RestGetClient} and {@link RestHeadClient}.
+ * 
+ * Failures are reported through the returned future, typically as {@link CompletionException}
+ * with an {@link HttpStatusError} or an IOException from the java.net hierarchy as cause.
+ */
+public interface RestAsyncClient {
+
+	/**
+	 * Requests a resource without blocking the calling thread.
+	 * 
+	 * The contract of {@link RestResponse#getResponseStream(ResponseHeaders)} is the same as for
+	 * {@link RestGetClient#get(String, RestResponse)} but the stream is written to from the client's executor.
+	 * 
+	 * @param uri resource address from server root, typically an encoded URI, for conversions see {@link RestURL}
+	 * @param response response expectations and handling
+	 * @return completed when the body has been written to the response stream,
+	 *  exceptionally with {@link HttpStatusError} if connection succeeded but HTTP status is not 2xx
+	 */
+	CompletableFuture<Void> getAsync(String uri, RestResponse response);
+	
+	/**
+	 * Performs a HEAD request without blocking the calling thread.
+	 * @param uri Resource URL from server root, encoded
+	 * @return headers, status not checked
+	 */
+	CompletableFuture<ResponseHeaders> headAsync(String uri);
+	
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Download of a single large resource to a file, in concurrent byte ranges if the server supports it.
+ * 
+ * Uses HEAD to read Content-Length, Accept-Ranges and a validator (ETag or Last-Modified),
+ * then GETs the segments concurrently through a {@link RestAsyncClient}, for example sharing one HttpClient,
+ * writing each at its offset in the file.
+ * Without range support, or for small files, the resource is downloaded in a single request.
+ * 
+ * If {@link #run()} fails, the bytes that were written are kept track of and a new call to {@link #run()}
+ * resumes, requesting only the remaining ranges with If-Range. If the resource has changed it is downloaded again.
+ * An instance is for a single file and is not thread safe.
+ */
+public class RestDownload {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestDownload.class);
+	
+	/**
+	 * Default: {@value #DEFAULT_SEGMENTS}.
+	 */
+	public static final int DEFAULT_SEGMENTS = 4;
+	
+	/**
+	 * Default: {@value #DEFAULT_MIN_SEGMENT_SIZE} bytes.
+	 */
+	public static final long DEFAULT_MIN_SEGMENT_SIZE = 1024 * 1024;
+	
+	private final RestAsyncClient client;
+	private final String uri;
+	private final FileChannel file;
+	private int segments = DEFAULT_SEGMENTS;
+	private long minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+	
+	// Download state, empty until the first run
+	private long length = -1;
+	private String validator = null;
+	private List<Segment> parts = new ArrayList<Segment>();
+	
+	/**
+	 * @param client for example RestClientJavaHttp
+	 * @param uri resource address from server root, see {@link RestGetClient#get(String, RestResponse)}
+	 * @param file open for writing, will not be closed
+	 */
+	public RestDownload(RestAsyncClient client, String uri, FileChannel file) {
+		this.client = client;
+		this.uri = uri;
+		this.file = file;
+	}
+	
+	/**
+	 * @param segments maximum number of concurrent range requests, 1 for a sequential download that can be resumed
+	 */
+	public void setSegments(int segments) {
+		if (segments < 1) {
+			throw new IllegalArgumentException("Segments must be at least 1, got " + segments);
+		}
+		this.segments = segments;
+	}
+	
+	/**
+	 * @param minSegmentSize files are not split into ranges smaller than this
+	 */
+	public void setMinSegmentSize(long minSegmentSize) {
+		this.minSegmentSize = minSegmentSize;
+	}
+	
+	/**
+	 * Downloads the resource, or the remaining parts of it after a previous failure.
+	 * 
+	 * @throws HttpStatusError if HEAD or a GET did not succeed
+	 * @throws IOException on connection or file errors, the download can be resumed
+	 */
+	public void run() throws IOException, HttpStatusError {
+		if (parts.isEmpty()) {
+			start();
+		} else {
+			logger.debug("Resuming download of {}, {} of {} bytes done", uri, getTransferred(), length);
+		}
+		if (!transfer()) {
+			logger.info("Resource {} changed during download, restarting", uri);
+			parts.clear();
+			start();
+			if (!transfer()) {
+				throw new IOException("Resource changed during download: " + uri);
+			}
+		}
+	}
+	
+	/**
+	 * @return true if {@link #run()} has completed successfully
+	 */
+	public boolean isComplete() {
+		if (parts.isEmpty()) {
+			return false;
+		}
+		for (Segment s : parts) {
+			if (!s.complete) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return resource length from HEAD, -1 if unknown or not started
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * @return bytes written to the file so far
+	 */
+	public long getTransferred() {
+		long transferred = 0;
+		for (Segment s : parts) {
+			transferred += s.written;
+		}
+		return transferred;
+	}
+	
+	/**
+	 * @return number of segments, 0 if not started
+	 */
+	public int getSegmentCount() {
+		return parts.size();
+	}
+	
+	private void start() throws IOException, HttpStatusError {
+		ResponseHeaders head = await(client.headAsync(uri));
+		if (head.getStatus() != HttpURLConnection.HTTP_OK) {
+			throw new HttpStatusError(uri, head, "");
+		}
+		length = head.getContentLength();
+		validator = getValidator(head);
+		boolean ranges = "bytes".equalsIgnoreCase(head.getFirst("Accept-Ranges")) && length > 0;
+		file.truncate(0);
+		int count = ranges ? (int) Math.max(1, Math.min(segments, length / Math.max(1, minSegmentSize))) : 1;
+		if (count == 1) {
+			// A range request even for a single segment allows resume
+			parts.add(ranges ? new RangeSegment(0, length - 1) : new Segment(0));
+		} else {
+			long size = length / count;
+			for (int i = 0; i < count; i++) {
+				long start = i * size;
+				long end = i == count - 1 ? length - 1 : start + size - 1;
+				parts.add(new RangeSegment(start, end));
+			}
+		}
+		logger.debug("Downloading {} bytes from {} in {} segment(s)", length, uri, parts.size());
+	}
+	
+	/**
+	 * @return false if the resource has changed, detected as full content in response to a range request
+	 */
+	private boolean transfer() throws IOException, HttpStatusError {
+		List<Segment> pending = new ArrayList<Segment>(parts.size());
+		List<CompletableFuture<Void>> requests = new ArrayList<CompletableFuture<Void>>(parts.size());
+		for (Segment s : parts) {
+			if (s.complete) {
+				continue;
+			}
+			if (!(s instanceof RangeSegment)) {
+				// Can not be resumed
+				s.written = 0;
+			}
+			pending.add(s);
+			requests.add(client.getAsync(uri, s));
+		}
+		// Wait for all requests so that the progress of each is known at resume
+		IOException failure = null;
+		for (int i = 0; i < pending.size(); i++) {
+			Segment s = pending.get(i);
+			try {
+				await(requests.get(i));
+				s.verify();
+				s.complete = true;
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		for (Segment s : pending) {
+			if (s.changed) {
+				return false;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return true;
+	}
+	
+	private static <T> T await(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+	
+	/**
+	 * @return a strong ETag or Last-Modified, weak validators can not be used with If-Range
+	 */
+	private static String getValidator(ResponseHeaders headers) {
+		String etag = headers.getETag();
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return headers.getLastModified();
+	}
+	
+	/**
+	 * Range start from a Content-Range header value like "bytes 0-499/1234".
+	 */
+	static long parseContentRangeStart(String contentRange) {
+		if (contentRange == null || !contentRange.startsWith("bytes ")) {
+			return -1;
+		}
+		int dash = contentRange.indexOf('-', 6);
+		if (dash < 0) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentRange.substring(6, dash).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * A full GET, writing from the segment start.
+	 */
+	private class Segment implements RestResponseChannel, WritableByteChannel {
+		
+		final long start;
+		volatile long written = 0;
+		volatile boolean complete = false;
+		volatile boolean changed = false;
+		
+		Segment(long start) {
+			this.start = start;
+		}
+		
+		@Override
+		public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+			return this;
+		}
+		
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int n = file.write(src, start + written);
+			written += n;
+			return n;
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+		void verify() throws IOException {
+			if (length >= 0 && written != length) {
+				throw new IOException("Download of " + uri + " ended after " + written + " of " + length + " bytes");
+			}
+		}
+		
+	}
+	
+	/**
+	 * The remaining part of a byte range, written at its offset.
+	 */
+	private class RangeSegment extends Segment implements RestResponseRange {
+		
+		final long end;
+		
+		RangeSegment(long start, long end) {
+			super(start);
+			this.end = end;
+		}
+		
+		@Override
+		public long getRangeStart() {
+			return start + written;
+		}
+		
+		@Override
+		public long getRangeEnd() {
+			return end;
+		}
+		
+		@Override
+		public String getIfRange() {
+			return validator;
+		}
+		
+		@Override
+		public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+			if (headers.getStatus() != HttpURLConnection.HTTP_PARTIAL) {
+				changed = true;
+				return rejecting("Expected partial content for range request, got status " + headers.getStatus());
+			}
+			String contentRange = headers.getFirst("Content-Range");
+			if (parseContentRangeStart(contentRange) != getRangeStart()) {
+				return rejecting("Requested range from " + getRangeStart() + ", got Content-Range " + contentRange);
+			}
+			return this;
+		}
+		
+		/**
+		 * @return a channel that makes the client abort the transfer
+		 */
+		private WritableByteChannel rejecting(final String message) {
+			return new WritableByteChannel() {
+				@Override
+				public int write(ByteBuffer src) throws IOException {
+					throw new IOException(message);
+				}
+				@Override
+				public boolean isOpen() {
+					return true;
+				}
+				@Override
+				public void close() {
+				}
+			};
+		}
+		
+		@Override
+		void verify() throws IOException {
+			if (written != end - start + 1) {
+				throw new IOException("Range " + start + "-" + end + " of " + uri + " ended after " + written + " bytes");
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent GET of many resources at the server root of a single host {@link RestAsyncClient},
+ * with a limit on the number of requests in flight.
+ *
+ * Clients are single host so the limit is effectively per host.
+ * Failed items, including {@link HttpStatusError}, are reported per item and do not abort the batch.
+ */
+public class RestGetBatch {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestGetBatch.class);
+
+	/**
+	 * Default: {@value #DEFAULT_MAX_IN_FLIGHT}.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+	private RestAsyncClient client;
+	private int maxInFlight;
+
+	public RestGetBatch(RestAsyncClient client) {
+		this(client, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param client For example RestClientJavaHttp, sharing its HttpClient between all requests
+	 * @param maxInFlight Maximum number of requests started but not completed
+	 */
+	public RestGetBatch(RestAsyncClient client, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Max in-flight must be at least 1, got " + maxInFlight);
+		}
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Requests all resources and waits until every request has completed.
+	 *
+	 * @param uris resource addresses from server root, see {@link RestGetClient#get(String, RestResponse)}
+	 * @param responses creates the response instance for each uri
+	 * @return one result per uri, in iteration order of the uris
+	 * @throws IOException if interrupted while waiting to start requests
+	 */
+	public <R extends RestResponse> List<Result<R>> get(Collection<String> uris, ResponseFactory<R> responses) throws IOException {
+		final Semaphore inFlight = new Semaphore(maxInFlight);
+		List<Result<R>> results = new ArrayList<Result<R>>(uris.size());
+		List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>(uris.size());
+		for (String uri : uris) {
+			final Result<R> result = new Result<R>(uri, responses.getResponse(uri));
+			results.add(result);
+			try {
+				inFlight.acquire();
+			} catch (InterruptedException e) {
+				logger.warn("RestGetBatch was interrupted after {} of {} requests", pending.size(), uris.size());
+				throw new IOException("interrupted", e);
+			}
+			CompletableFuture<Void> f;
+			try {
+				f = client.getAsync(uri, result.getResponse());
+			} catch (RuntimeException e) {
+				// For example an invalid uri, fails only this request
+				f = CompletableFuture.failedFuture(e);
+			}
+			pending.add(f.handle((v, e) -> {
+				inFlight.release();
+				if (e != null) {
+					result.error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+					logger.debug("Batch GET failed for {}: {}", uri, result.error.toString());
+				}
+				return null;
+			}));
+		}
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()])).join();
+		return results;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Provides a new response instance per request in the batch.
+	 */
+	public interface ResponseFactory<R extends RestResponse> {
+
+		R getResponse(String uri);
+
+	}
+
+	/**
+	 * Outcome for a single uri in the batch.
+	 */
+	public static class Result<R extends RestResponse> {
+
+		private String uri;
+		private R response;
+		private volatile Throwable error = null;
+
+		Result(String uri, R response) {
+			this.uri = uri;
+			this.response = response;
+		}
+
+		public String getUri() {
+			return uri;
+		}
+
+		/**
+		 * @return the response instance, written to only if status was 2xx
+		 */
+		public R getResponse() {
+			return response;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		/**
+		 * @return null on success, typically IOException or {@link HttpStatusError}
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * @return the status error if the connection succeeded but HTTP status was not 2xx, otherwise null
+		 */
+		public HttpStatusError getHttpStatusError() {
+			return error instanceof HttpStatusError ? (HttpStatusError) error : null;
+		}
+
+	}
+
+}
@@ -20,7 +20,7 @@ import java.io.IOException;
 public interface RestGetClient {
 
 	/**
-	 * Requests a resource, validate that HTTP status is 200,
+	 * Requests a resource, validate that HTTP status is 2xx,
 	 * writes body to provided output stream.
 	 * 
 	 * Argument and connection handling is up to the implementation.
@@ -35,7 +35,7 @@ public interface RestGetClient {
 	 * @param uri resource address from server root, typically an encoded URI, for conversions see {@link RestURL}
 	 * @param response response expectations and handling
 	 * @throws IOException From the hierarchy in java.net on connection errors
-	 * @throws HttpStatusError If connection succeeded but HTTP status is not 200
+	 * @throws HttpStatusError If connection succeeded but HTTP status is not 2xx, for example 304 or 404
 	 */
 	void get(String uri, RestResponse response) throws IOException, HttpStatusError;
 	
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.net.URL;
+
+/**
+ * Instrumentation of the requests made by a client, for example timing and transfer metrics.
+ * 
+ * Callbacks are made from the requesting thread or from the client's executor,
+ * so implementations must be thread safe, fast, and must not throw exceptions.
+ * Times are in nanoseconds since the request was started.
+ */
+public interface RestRequestListener {
+
+	/**
+	 * @param method GET or HEAD
+	 * @param url the full URL
+	 */
+	default void requestStarted(String method, URL url) {
+	}
+	
+	/**
+	 * Time to first byte.
+	 * @param status HTTP status
+	 * @param nanos time from start until headers were received
+	 */
+	default void headersReceived(String method, URL url, int status, long nanos) {
+	}
+	
+	/**
+	 * @param status HTTP status
+	 * @param bytes body bytes transferred to the response
+	 * @param nanos time from start until the body was completely received
+	 */
+	default void requestCompleted(String method, URL url, int status, long bytes, long nanos) {
+	}
+	
+	/**
+	 * @param status HTTP status, 0 if no response was received
+	 * @param error typically {@link HttpStatusError} or an IOException from the java.net hierarchy
+	 * @param nanos time from start until the failure
+	 */
+	default void requestFailed(String method, URL url, int status, Throwable error, long nanos) {
+	}
+	
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * For responses that can receive the body as buffers, for example large downloads to a {@link FileChannel}.
+ * 
+ * Clients that can not provide buffers use {@link #getResponseStream(ResponseHeaders)},
+ * which can typically be implemented using {@link Channels#newOutputStream(WritableByteChannel)}.
+ */
+public interface RestResponseChannel extends RestResponse {
+
+	/**
+	 * Gets the channel to write output to, used instead of {@link #getResponseStream(ResponseHeaders)}
+	 * by clients that support it.
+	 * 
+	 * Same exception handling as {@link #getResponseStream(ResponseHeaders)}.
+	 * 
+	 * @param headers The response headers from the server
+	 * @return Where contents should be written. Will not be closed by the client.
+	 */
+	WritableByteChannel getResponseChannel(ResponseHeaders headers);
+	
+	/**
+	 * @return {@link #getResponseChannel(ResponseHeaders)} as stream
+	 */
+	@Override
+	default OutputStream getResponseStream(ResponseHeaders headers) {
+		return Channels.newOutputStream(getResponseChannel(headers));
+	}
+	
+}
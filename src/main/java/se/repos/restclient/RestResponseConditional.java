@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+/**
+ * For <a href="https://tools.ietf.org/html/rfc7232">conditional requests</a>,
+ * typically revalidation of a cached response.
+ * 
+ * A 304 Not Modified response is reported as {@link HttpStatusError}.
+ */
+public interface RestResponseConditional extends RestResponse {
+
+	/**
+	 * @return the value of the If-None-Match header, typically an ETag from an earlier response, null to not send
+	 */
+	String getIfNoneMatch();
+	
+	/**
+	 * @return the value of the If-Modified-Since header, typically Last-Modified from an earlier response, null to not send
+	 */
+	String getIfModifiedSince();
+	
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import se.repos.restclient.base.ByteBufferPool;
+
+/**
+ * Like {@link RestResponseBean} but buffering the body in a buffer from a {@link ByteBufferPool},
+ * sized from Content-Length when the server sends one.
+ *
+ * Call {@link #release()} when done with the body, after which the body and any views of it must not be used.
+ * Not thread safe.
+ */
+public class RestResponsePooled implements RestResponse {
+
+	private static final Charset DEFAULT_BODY_ENCODING = StandardCharsets.UTF_8;
+
+	private final ByteBufferPool pool;
+	private ByteBuffer buffer = null;
+	private boolean released = false;
+	private ResponseHeaders headers;
+
+	/**
+	 * Uses {@link ByteBufferPool#getDefault()}.
+	 */
+	public RestResponsePooled() {
+		this(ByteBufferPool.getDefault());
+	}
+
+	public RestResponsePooled(ByteBufferPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public OutputStream getResponseStream(ResponseHeaders headers) {
+		checkReleased();
+		this.headers = headers;
+		long length = headers.getContentLength();
+		if (buffer == null) {
+			// Size classes above the largest pooled one are allocated as needed while writing.
+			buffer = pool.acquire((int) Math.min(Math.max(length, 0), ByteBufferPool.MAX_POOLED_CAPACITY));
+		} else {
+			// Called again, for example by a retry, the body starts over.
+			buffer.clear();
+		}
+		return new PooledOutputStream();
+	}
+
+	public ResponseHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return read-only view of the body, valid until {@link #release()}
+	 */
+	public ByteBuffer getBodyBuffer() {
+		checkReleased();
+		if (buffer == null) {
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.flip();
+		return view;
+	}
+
+	/**
+	 * Decodes directly from the pooled buffer, without an intermediate byte array or String.
+	 * @return body characters
+	 */
+	public CharBuffer getBodyChars(Charset encoding) {
+		return encoding.decode(getBodyBuffer());
+	}
+
+	public CharBuffer getBodyChars() {
+		return DEFAULT_BODY_ENCODING.decode(getBodyBuffer());
+	}
+
+	public String getBody() {
+		return getBody(DEFAULT_BODY_ENCODING);
+	}
+
+	public String getBody(Charset encoding) {
+		return getBodyChars(encoding).toString();
+	}
+
+	/**
+	 * Returns the buffer to the pool. Subsequent calls have no effect.
+	 */
+	public void release() {
+		if (released) {
+			return;
+		}
+		released = true;
+		if (buffer != null) {
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	private void checkReleased() {
+		if (released) {
+			throw new IllegalStateException("Response buffer has been released");
+		}
+	}
+
+	private void ensureRemaining(int length) {
+		if (buffer.remaining() >= length) {
+			return;
+		}
+		int required = buffer.position() + length;
+		if (required < 0) {
+			throw new IllegalStateException("Response body too large to buffer");
+		}
+		ByteBuffer grown = pool.acquire(Math.max(required, (int) Math.min(Integer.MAX_VALUE, 2L * buffer.capacity())));
+		buffer.flip();
+		grown.put(buffer);
+		pool.release(buffer);
+		buffer = grown;
+	}
+
+	/**
+	 * @return the body using default encoding
+	 */
+	@Override
+	public String toString() {
+		return released ? "(released)" : getBody();
+	}
+
+	private class PooledOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+			checkReleased();
+			ensureRemaining(1);
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			checkReleased();
+			ensureRemaining(len);
+			buffer.put(b, off, len);
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * For responses that consume the body at their own pace, for example streaming parsers or relays to another connection.
+ * 
+ * Clients that can not publish buffers use {@link #getResponseStream(ResponseHeaders)}.
+ */
+public interface RestResponsePublisher extends RestResponse {
+
+	/**
+	 * Receives the body as buffers, used instead of {@link #getResponseStream(ResponseHeaders)}
+	 * by clients that support it. Only called for a 2xx status.
+	 * 
+	 * The publisher supports a single subscriber, that must subscribe or the request will not complete.
+	 * Buffers are read from the server only as the subscriber requests them.
+	 * The request completes when the subscriber has received onComplete or onError, or has cancelled.
+	 * The subscriber may subscribe from another thread, and may keep the buffers it receives.
+	 * 
+	 * @param headers The response headers from the server
+	 * @param body The response body
+	 */
+	void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> body);
+	
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+/**
+ * For requests of part of a resource using the
+ * <a href="https://tools.ietf.org/html/rfc7233">Range header</a>, a single byte range.
+ * 
+ * Clients that support it write the body of a 206 Partial Content response
+ * to the response stream as they do for other 2xx statuses.
+ * Check the status in {@link #getResponseStream(ResponseHeaders)}, 200 means that the server
+ * sent the full resource, for example because the If-Range validator did not match.
+ */
+public interface RestResponseRange extends RestResponse {
+
+	/**
+	 * @return first byte position, inclusive
+	 */
+	long getRangeStart();
+	
+	/**
+	 * @return last byte position, inclusive, or -1 for the rest of the resource
+	 */
+	long getRangeEnd();
+	
+	/**
+	 * @return an ETag or Last-Modified value, to get the full resource if it has changed, null to not send If-Range
+	 */
+	String getIfRange();
+	
+}
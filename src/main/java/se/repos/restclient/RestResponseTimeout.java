@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import java.time.Duration;
+
+/**
+ * For requests with their own time limit, instead of the client's default.
+ */
+public interface RestResponseTimeout extends RestResponse {
+
+	/**
+	 * Clients that support it fail with an IOException, typically java.net.http.HttpTimeoutException,
+	 * if headers are not received within the timeout, or if the body has not been completely received
+	 * when the timeout has passed since the request was started.
+	 * 
+	 * @return time limit for the request including the body, null for the client's default
+	 */
+	Duration getTimeout();
+	
+}
@@ -16,6 +16,7 @@
 package se.repos.restclient;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -46,10 +47,17 @@ public class RestURL {
 	 */
 	public static final String PARAM_ENCODING = "UTF-8";
 	
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
 	private String root = null;
-	private String rest;
+	private final StringBuilder rest;
 	private boolean hasQuery;
 	
+	// Derived values, reset at modification
+	private String restString = null;
+	private URI uri = null;
+	private Map<String, List<String>> query = null;
+	
 	public RestURL(String encodedUri) {
 		this(encodedUri, new HashMap<String,String>());
 	}
@@ -66,12 +74,12 @@ public class RestURL {
 		}
 		if (uri.getHost() != null) {
 			this.root = encodedUri.substring(0, encodedUri.indexOf('/', uri.getScheme().length() + 3));
-			this.rest = encodedUri.substring(this.root.length());
+			this.rest = new StringBuilder(encodedUri.length() + 64).append(encodedUri, this.root.length(), encodedUri.length());
 		} else {
 			if ('/' != encodedUri.charAt(0)) {
 				throw new IllegalArgumentException("URI must be absolute from server root");
 			}
-			this.rest = encodedUri;
+			this.rest = new StringBuilder(encodedUri.length() + 64).append(encodedUri);
 		}
 		this.hasQuery = encodedUri.contains("?");
 		for (Map.Entry<String, String> p : queryParametersNotEncoded.entrySet()) {
@@ -89,10 +97,20 @@ public class RestURL {
 	/**
 	 * 
 	 * @return The value list's toString returns comma separated list of values with no whitespaces
-	 *  meaning that the common case, a single parameter per key, is retrieved using <code>"" + get(key)</code>
+	 *  meaning that the common case, a single parameter per key, is retrieved using <code>"" + get(key)</code>.
+	 *  A new map on each call, copied from the query that is parsed once until a parameter is added.
 	 */
 	public Map<String, List<String>> getQuery() {
-		return getQueryParams(getQueryString());
+		if (query == null) {
+			query = getQueryParams(getQueryString());
+		}
+		ParamMap copy = new ParamMap();
+		for (Map.Entry<String, List<String>> p : query.entrySet()) {
+			for (String v : p.getValue()) {
+				copy.add(p.getKey(), v);
+			}
+		}
+		return copy;
 	}
 	
 	/**
@@ -105,8 +123,12 @@ public class RestURL {
 	 * @return this instance for chaining
 	 */
 	public RestURL addQueryParameter(String paramName, String paramValueNotEncoded) {
-		rest = rest + (hasQuery ? '&' : '?') + paramName + "=" + urlencode(paramValueNotEncoded);
+		rest.append(hasQuery ? '&' : '?').append(paramName).append('=');
+		urlencode(rest, paramValueNotEncoded);
 		hasQuery = true;
+		restString = null;
+		uri = null;
+		query = null;
 		return this;
 	}
 	
@@ -134,7 +156,10 @@ public class RestURL {
 	} 
 	
 	public URI getURI() {
-		return parse(toString());
+		if (uri == null) {
+			uri = parse(toString());
+		}
+		return uri;
 	}
 	
 	/**
@@ -146,12 +171,12 @@ public class RestURL {
 		if (root == null) {
 			throw new IllegalArgumentException("This RestURL has no server specified and can therefore not be converted to URL");
 		}
-		return parseURL(root + rest);
+		return parseURL(toString());
 	}
 	
 	@Override
 	public String toString() {
-		return root == null ? rest : root + rest;
+		return root == null ? toStringPart() : root + toStringPart();
 	}
 	
 	/**
@@ -163,7 +188,10 @@ public class RestURL {
 	}
 	
 	public String toStringPart() {
-		return rest;
+		if (restString == null) {
+			restString = rest.toString();
+		}
+		return restString;
 	}
 	
 	/**
@@ -187,13 +215,46 @@ public class RestURL {
 		return toStringPart();
 	}
 	
+	/**
+	 * @return the value encoded with {@link #urlencode(StringBuilder, String)}
+	 */
 	protected String urlencode(String v) {
-		try {
-			return URLEncoder.encode(v, PARAM_ENCODING).replace("+", "%20");
-		} catch (UnsupportedEncodingException e) {
-			throw new RuntimeException("Unexpected error for static encoding " + PARAM_ENCODING, e);
+		StringBuilder b = new StringBuilder(v.length() + 16);
+		urlencode(b, v);
+		return b.toString();
+	}
+	
+	/**
+	 * Appends the value encoded like {@link URLEncoder} with {@value #PARAM_ENCODING} but with space as %20,
+	 * without intermediate strings for the common all-ascii case.
+	 * Override to change the encoding of query parameter values.
+	 */
+	protected void urlencode(StringBuilder to, String v) {
+		int length = v.length();
+		for (int i = 0; i < length; i++) {
+			char c = v.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| c == '-' || c == '_' || c == '.' || c == '*') {
+				to.append(c);
+			} else if (c < 0x80) {
+				appendHex(to, c);
+			} else {
+				// Encode the whole non-ascii run at once so that surrogate pairs are kept together
+				int end = i + 1;
+				while (end < length && v.charAt(end) >= 0x80) {
+					end++;
+				}
+				for (byte u : v.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+					appendHex(to, u & 0xFF);
+				}
+				i = end - 1;
+			}
 		}
 	}
+	
+	private static void appendHex(StringBuilder to, int b) {
+		to.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+	}
 
 	protected String urldecode(String v) {
 		try {
@@ -212,27 +273,52 @@ public class RestURL {
 		if (rq == null) {
 			return p;
 		}
-		String[] split = rq.split("&");
-		for (String s : split) {
-			if (s.length() == 0) {
+		if (rq.length() == 0) {
+			throw new IllegalArgumentException("Found empty query string part in " + rq);
+		}
+		// Trailing separators are ignored, consistent with the String.split behavior we used to have
+		int end = rq.length();
+		while (end > 0 && rq.charAt(end - 1) == '&') {
+			end--;
+		}
+		int start = 0;
+		while (start < end) {
+			int next = rq.indexOf('&', start);
+			if (next < 0) {
+				next = end;
+			}
+			if (next == start) {
 				throw new IllegalArgumentException("Found empty query string part in " + rq);
 			}
-			int n = s.indexOf('=');
-			if (n < 1) {
-				throw new IllegalArgumentException("Query string part could not be parsed as key=value: " + s);
+			int n = rq.indexOf('=', start);
+			if (n <= start || n > next) {
+				throw new IllegalArgumentException("Query string part could not be parsed as key=value: " + rq.substring(start, next));
 			}
-			p.add(s.substring(0, n), urldecode(s.substring(n + 1)));
+			p.add(rq.substring(start, n), urldecode(rq, n + 1, next));
+			start = next + 1;
 		}
 		return p;
 	}
 	
+	private String urldecode(String s, int start, int end) {
+		String v = s.substring(start, end);
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == '%' || c == '+') {
+				return urldecode(v);
+			}
+		}
+		return v;
+	}
+	
 	public class ParamMap extends LinkedHashMap<String, List<String>> {
 		
 		private static final long serialVersionUID = 1L;
 
 		public void add(String key, String valueDecoded) {
-			if (containsKey(key)) {
-				get(key).add(valueDecoded);
+			List<String> values = get(key);
+			if (values != null) {
+				values.add(valueDecoded);
 			} else {
 				put(key, new ParamValues(valueDecoded));
 			}
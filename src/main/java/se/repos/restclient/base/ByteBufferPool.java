@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.base;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of reusable buffers in power of two size classes, thread safe.
+ *
+ * Buffers larger than the largest size class are allocated when needed and not pooled.
+ * Buffers that are not released are simply garbage collected.
+ */
+public class ByteBufferPool {
+
+	/**
+	 * Smallest size class: {@value #MIN_CAPACITY} bytes.
+	 */
+	public static final int MIN_CAPACITY = 4096;
+
+	/**
+	 * Largest pooled size class: {@value #MAX_POOLED_CAPACITY} bytes.
+	 */
+	public static final int MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+
+	/**
+	 * Default: {@value #DEFAULT_MAX_PER_SIZE} buffers retained per size class.
+	 */
+	public static final int DEFAULT_MAX_PER_SIZE = 16;
+
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+	private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY);
+
+	private static final ByteBufferPool DEFAULT = new ByteBufferPool(DEFAULT_MAX_PER_SIZE, false);
+
+	private final boolean direct;
+	private final int maxPerSize;
+	private final List<Queue<ByteBuffer>> pooled;
+	private final AtomicInteger[] counts;
+
+	/**
+	 * @param maxPerSize maximum number of released buffers to retain per size class
+	 * @param direct true to allocate direct buffers, for example when passed on to channels
+	 */
+	public ByteBufferPool(int maxPerSize, boolean direct) {
+		this.direct = direct;
+		this.maxPerSize = maxPerSize;
+		int sizes = MAX_SHIFT - MIN_SHIFT + 1;
+		this.pooled = new ArrayList<Queue<ByteBuffer>>(sizes);
+		this.counts = new AtomicInteger[sizes];
+		for (int i = 0; i < sizes; i++) {
+			pooled.add(new ConcurrentLinkedQueue<ByteBuffer>());
+			counts[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * @return shared pool of heap buffers
+	 */
+	public static ByteBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param minCapacity required capacity
+	 * @return cleared buffer with at least the required capacity, to be returned using {@link #release(ByteBuffer)}
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int index = sizeIndex(minCapacity);
+		if (index < 0) {
+			return allocate(minCapacity);
+		}
+		ByteBuffer b = pooled.get(index).poll();
+		if (b == null) {
+			return allocate(MIN_CAPACITY << index);
+		}
+		counts[index].decrementAndGet();
+		return b;
+	}
+
+	/**
+	 * Makes the buffer available for reuse, if there is room in the pool.
+	 * The caller must not use the buffer, or any view of it, after release.
+	 * @param buffer from {@link #acquire(int)}
+	 */
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		if (buffer.isDirect() != direct || Integer.bitCount(capacity) != 1) {
+			return;
+		}
+		int index = sizeIndex(capacity);
+		if (index < 0 || (MIN_CAPACITY << index) != capacity) {
+			return;
+		}
+		if (counts[index].incrementAndGet() > maxPerSize) {
+			counts[index].decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		pooled.get(index).offer(buffer);
+	}
+
+	/**
+	 * @return number of buffers currently retained for reuse
+	 */
+	public int getPooledCount() {
+		int n = 0;
+		for (AtomicInteger c : counts) {
+			n += c.get();
+		}
+		return n;
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * @return size class index, -1 if larger than the largest pooled size
+	 */
+	private static int sizeIndex(int capacity) {
+		if (capacity > MAX_POOLED_CAPACITY) {
+			return -1;
+		}
+		if (capacity <= MIN_CAPACITY) {
+			return 0;
+		}
+		int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+		return shift - MIN_SHIFT;
+	}
+
+}
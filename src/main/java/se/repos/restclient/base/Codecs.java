@@ -15,21 +15,22 @@
  */
 package se.repos.restclient.base;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 /**
  * Encode and decode strings to base64 without external libraries.
- * Uses Java 8+ Base64 class.
+ * Uses Java 8+ Base64 class. Strings are UTF-8, regardless of platform default encoding.
  */
 public abstract class Codecs {
 
 	public static String base64encode(String decoded) {
-		return Base64.getEncoder().encodeToString(decoded.getBytes());
+		return Base64.getEncoder().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
 	}
 	
 	public static String base64decode(String encoded) {
 		byte[] b = Base64.getDecoder().decode(encoded);
-		return new String(b);
+		return new String(b, StandardCharsets.UTF_8);
 	}
 	
 }
@@ -34,20 +34,24 @@ public abstract class ResponseHeadersMap extends ResponseHeadersReadOnly {
 	@Override
 	public abstract String getContentType();
 	
+	/**
+	 * Renders all headers, only meant for logging.
+	 */
 	@Override
 	public String toString() {
-		String separator = ", ";
-		StringBuffer h = new StringBuffer();
+		StringBuilder h = new StringBuilder();
 		for (Map.Entry<String, List<String>> e : this.entrySet()) {
 			for (String v : e.getValue()) {
-				h.append(separator);
+				if (h.length() > 0) {
+					h.append(", ");
+				}
 				if (e.getKey() != null) {
 					h.append(e.getKey()).append(": ");
 				}
 				h.append(v);
 			}
 		}
-		if (h.length() > separator.length()) return h.substring(separator.length()); 
+		if (h.length() > 0) return h.toString();
 		return "(empty headers)";
 	}
 
@@ -62,7 +62,7 @@ public abstract class RestClientUrlBase implements RestClient {
 		if (!uri.startsWith("/")) {
 			throw new IllegalArgumentException("URIs must be relative to server root starting with slash. Got " + uri);
 		} 
-		get(new URL(root + uri), response);
+		get(getUrl(uri), response);
 	}
 	
 	public abstract void get(URL url, RestResponse response)
@@ -73,11 +73,20 @@ public abstract class RestClientUrlBase implements RestClient {
 		if (!uri.startsWith("/")) {
 			throw new IllegalArgumentException("URIs must be relative to server root starting with slash");
 		}
-		return head(new URL(root + uri));
+		return head(getUrl(uri));
 	}
 	
 	public abstract ResponseHeaders head(URL url) throws IOException;
 	
+	/**
+	 * @param uri resource from server root starting with slash, not validated
+	 * @return full URL at this client's server root
+	 * @throws MalformedURLException if the concatenated string is not a valid URL
+	 */
+	protected URL getUrl(String uri) throws MalformedURLException {
+		return new URL(root + uri);
+	}
+	
 	protected String getHost() {
 		return host;
 	}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseAccept;
+import se.repos.restclient.RestResponseConditional;
+import se.repos.restclient.RestResponseTimeout;
+
+/**
+ * Passes the body on to the caller's response while keeping a copy, up to a limit, for reuse.
+ * Forwards the caller's Accept, conditional headers and timeout, conditional headers can be replaced.
+ */
+class CapturingResponse implements RestResponseAccept, RestResponseConditional, RestResponseTimeout {
+
+	private final RestResponse target;
+	private final int maxCapture;
+	private String ifNoneMatch = null;
+	private String ifModifiedSince = null;
+	private ResponseHeaders headers = null;
+	private ByteArrayOutputStream capture = null;
+	private boolean overflow = false;
+	private volatile boolean targetFailed = false;
+
+	/**
+	 * @param target the caller's response, may be null
+	 * @param maxCapture bodies larger than this are passed on but not kept
+	 */
+	CapturingResponse(RestResponse target, int maxCapture) {
+		this.target = target;
+		this.maxCapture = maxCapture;
+	}
+
+	@Override
+	public String getAccept() {
+		return getAccept(target);
+	}
+
+	static String getAccept(RestResponse response) {
+		if (response instanceof RestResponseAccept) {
+			return ((RestResponseAccept) response).getAccept();
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the response sends a conditional header, not only implements the interface
+	 */
+	static boolean isConditional(RestResponse response) {
+		if (response instanceof RestResponseConditional) {
+			RestResponseConditional conditional = (RestResponseConditional) response;
+			return conditional.getIfNoneMatch() != null || conditional.getIfModifiedSince() != null;
+		}
+		return false;
+	}
+
+	@Override
+	public Duration getTimeout() {
+		return getTimeout(target);
+	}
+
+	static Duration getTimeout(RestResponse response) {
+		if (response instanceof RestResponseTimeout) {
+			return ((RestResponseTimeout) response).getTimeout();
+		}
+		return null;
+	}
+
+	void setIfNoneMatch(String ifNoneMatch) {
+		this.ifNoneMatch = ifNoneMatch;
+	}
+
+	@Override
+	public String getIfNoneMatch() {
+		if (ifNoneMatch == null && target instanceof RestResponseConditional) {
+			return ((RestResponseConditional) target).getIfNoneMatch();
+		}
+		return ifNoneMatch;
+	}
+
+	void setIfModifiedSince(String ifModifiedSince) {
+		this.ifModifiedSince = ifModifiedSince;
+	}
+
+	@Override
+	public String getIfModifiedSince() {
+		if (ifModifiedSince == null && target instanceof RestResponseConditional) {
+			return ((RestResponseConditional) target).getIfModifiedSince();
+		}
+		return ifModifiedSince;
+	}
+
+	@Override
+	public OutputStream getResponseStream(ResponseHeaders headers) {
+		this.headers = headers;
+		this.capture = new ByteArrayOutputStream();
+		final OutputStream out = target == null ? null : target.getResponseStream(headers);
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				if (out != null) {
+					try {
+						out.write(b);
+					} catch (IOException e) {
+						targetFailed = true;
+						throw e;
+					}
+				}
+				if (reserve(1)) {
+					capture.write(b);
+				}
+			}
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (out != null) {
+					try {
+						out.write(b, off, len);
+					} catch (IOException e) {
+						targetFailed = true;
+						throw e;
+					}
+				}
+				if (reserve(len)) {
+					capture.write(b, off, len);
+				}
+			}
+			@Override
+			public void flush() throws IOException {
+				if (out != null) {
+					try {
+						out.flush();
+					} catch (IOException e) {
+						targetFailed = true;
+						throw e;
+					}
+				}
+			}
+		};
+	}
+	
+	/**
+	 * @return true if the caller's response stream threw, as opposed to a failure in the client
+	 */
+	boolean isTargetFailed() {
+		return targetFailed;
+	}
+
+	private boolean reserve(int length) {
+		if (overflow) {
+			return false;
+		}
+		if (capture.size() + length > maxCapture) {
+			overflow = true;
+			capture = null;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return headers of the response if the response stream was requested, otherwise null
+	 */
+	ResponseHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return the complete body, null if the response stream was not requested or the body exceeded the limit
+	 */
+	byte[] getBody() {
+		if (capture == null) {
+			return null;
+		}
+		return capture.toByteArray();
+	}
+
+	/**
+	 * Writes a kept body to a response, as if received from the server.
+	 */
+	static void replay(RestResponse response, ResponseHeaders headers, byte[] body) throws IOException {
+		OutputStream out = response.getResponseStream(headers);
+		out.write(body);
+		out.flush();
+	}
+
+}
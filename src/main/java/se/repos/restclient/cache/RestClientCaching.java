@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseConditional;
+import se.repos.restclient.RestResponseRange;
+
+/**
+ * Caches GET responses from any {@link RestClient} and revalidates them using
+ * If-None-Match and If-Modified-Since, see {@link RestResponseConditional}.
+ *
+ * Responses are served without revalidation while fresh according to Cache-Control max-age.
+ * Only status 200 is cached and Cache-Control no-store is respected.
+ * Range requests, see {@link RestResponseRange}, bypass the cache.
+ * Cached bodies are replayed into {@link RestResponse#getResponseStream(ResponseHeaders)}
+ * with the headers from the original response.
+ *
+ * Entries are evicted least recently used first, bounded by count and total body size.
+ * HEAD requests are not cached.
+ */
+public class RestClientCaching implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientCaching.class);
+
+	/**
+	 * Default: {@value #DEFAULT_MAX_ENTRIES}.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	/**
+	 * Total body size in bytes. Default: {@value #DEFAULT_MAX_BYTES}.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+	private final RestClient client;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final int maxEntryBytes;
+
+	// Access ordered for LRU eviction, guarded by this
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long bytes = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public RestClientCaching(RestClient client) {
+		this(client, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param client the client to make requests with
+	 * @param maxEntries maximum number of cached responses
+	 * @param maxBytes maximum total size of cached bodies, also the limit for a single body
+	 */
+	public RestClientCaching(RestClient client, int maxEntries, long maxBytes) {
+		this.client = client;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = (int) Math.min(maxBytes, Integer.MAX_VALUE - 8);
+	}
+
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		if (response instanceof RestResponseRange) {
+			client.get(uri, response);
+			return;
+		}
+		String key = getKey(uri, response);
+		Entry cached;
+		synchronized (this) {
+			cached = entries.get(key);
+		}
+
+		if (cached != null && cached.isFresh()) {
+			logger.trace("Cache hit {}", key);
+			hits.increment();
+			CapturingResponse.replay(response, cached.headers, cached.body);
+			return;
+		}
+
+		CapturingResponse capture = new CapturingResponse(response, maxEntryBytes);
+		if (cached != null) {
+			capture.setIfNoneMatch(cached.etag);
+			capture.setIfModifiedSince(cached.lastModified);
+		}
+		try {
+			client.get(uri, capture);
+		} catch (HttpStatusError e) {
+			if (cached != null && e.getHttpStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				logger.trace("Cache revalidated {}", key);
+				revalidations.increment();
+				cached.expires = getExpires(e.getHeaders());
+				CapturingResponse.replay(response, cached.headers, cached.body);
+				return;
+			}
+			throw e;
+		}
+		misses.increment();
+		store(key, capture);
+	}
+
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		return client.head(uri);
+	}
+
+	private String getKey(String uri, RestResponse response) {
+		String accept = CapturingResponse.getAccept(response);
+		return accept == null ? uri : uri + '\n' + accept;
+	}
+
+	private void store(String key, CapturingResponse capture) {
+		ResponseHeaders headers = capture.getHeaders();
+		byte[] body = capture.getBody();
+		if (headers == null || body == null || headers.getStatus() != HttpURLConnection.HTTP_OK) {
+			return;
+		}
+		if (hasCacheControl(headers, "no-store")) {
+			return;
+		}
+		Entry entry = new Entry(headers, body, getExpires(headers));
+		if (entry.etag == null && entry.lastModified == null && !entry.isFresh()) {
+			// Can neither be reused nor revalidated
+			return;
+		}
+		synchronized (this) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				bytes -= previous.body.length;
+			}
+			bytes += body.length;
+			Iterator<Entry> lru = entries.values().iterator();
+			while ((bytes > maxBytes || entries.size() > maxEntries) && lru.hasNext()) {
+				bytes -= lru.next().body.length;
+				lru.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return total size of cached bodies
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of responses served from cache without contacting the server
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of responses served from cache after a 304 Not Modified
+	 */
+	public long getRevalidationCount() {
+		return revalidations.sum();
+	}
+
+	/**
+	 * @return number of responses that were fetched from the server
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} when the response becomes stale, now if there is no max-age
+	 */
+	static long getExpires(ResponseHeaders headers) {
+		long now = System.nanoTime();
+		long maxAge = 0;
+		for (String value : headers.getValues("Cache-Control")) {
+			for (String directive : value.split(",")) {
+				directive = directive.trim().toLowerCase();
+				if (directive.equals("no-cache")) {
+					return now;
+				}
+				if (directive.startsWith("max-age=")) {
+					try {
+						maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+					} catch (NumberFormatException e) {
+						logger.debug("Ignoring invalid Cache-Control {}", value);
+					}
+				}
+			}
+		}
+		return now + TimeUnit.SECONDS.toNanos(maxAge);
+	}
+
+	static boolean hasCacheControl(ResponseHeaders headers, String directive) {
+		for (String value : headers.getValues("Cache-Control")) {
+			for (String d : value.split(",")) {
+				if (d.trim().equalsIgnoreCase(directive)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	private static class Entry {
+
+		private final ResponseHeaders headers;
+		private final byte[] body;
+		private final String etag;
+		private final String lastModified;
+		private volatile long expires;
+
+		Entry(ResponseHeaders headers, byte[] body, long expires) {
+			this.headers = headers;
+			this.body = body;
+			this.etag = headers.getETag();
+			this.lastModified = headers.getLastModified();
+			this.expires = expires;
+		}
+
+		boolean isFresh() {
+			return System.nanoTime() - expires < 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseConditional;
+import se.repos.restclient.RestResponseRange;
+import se.repos.restclient.RestResponseTimeout;
+
+/**
+ * Lets concurrent identical GET requests share one request to the server.
+ *
+ * Requests are identical if they have the same uri and Accept header.
+ * The first caller streams the body as usual while it is kept in memory,
+ * then the body is replayed to every caller that waited for it.
+ * Status errors and IOExceptions are shared with the waiting callers.
+ * If the body is larger than the limit, or the first caller's response stream fails,
+ * waiting callers make their own requests.
+ * A caller with a {@link RestResponseTimeout} waits at most that long for the shared request.
+ *
+ * Conditional and range requests, see {@link RestResponseConditional} and {@link RestResponseRange}, are never shared.
+ * Nothing is kept after the shared request has completed.
+ */
+public class RestClientGetCoalescing implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientGetCoalescing.class);
+
+	/**
+	 * Default: {@value #DEFAULT_MAX_SHARED_BYTES}.
+	 */
+	public static final int DEFAULT_MAX_SHARED_BYTES = 8 * 1024 * 1024;
+
+	private final RestClient client;
+	private final int maxSharedBytes;
+
+	private final ConcurrentHashMap<String, CompletableFuture<Shared>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Shared>>();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	public RestClientGetCoalescing(RestClient client) {
+		this(client, DEFAULT_MAX_SHARED_BYTES);
+	}
+
+	/**
+	 * @param client the client to make requests with
+	 * @param maxSharedBytes largest body that is kept for waiting callers
+	 */
+	public RestClientGetCoalescing(RestClient client, int maxSharedBytes) {
+		this.client = client;
+		this.maxSharedBytes = maxSharedBytes;
+	}
+
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		if (CapturingResponse.isConditional(response) || response instanceof RestResponseRange) {
+			requests.increment();
+			client.get(uri, response);
+			return;
+		}
+		String accept = CapturingResponse.getAccept(response);
+		String key = accept == null ? uri : uri + '\n' + accept;
+
+		CompletableFuture<Shared> flight = new CompletableFuture<Shared>();
+		CompletableFuture<Shared> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalesced.increment();
+			Shared shared = await(existing, key, CapturingResponse.getTimeout(response));
+			if (shared != null) {
+				logger.trace("Replaying coalesced GET {}", key);
+				CapturingResponse.replay(response, shared.headers, shared.body);
+				return;
+			}
+			logger.debug("Coalesced GET {} could not be shared, requesting", key);
+			requests.increment();
+			client.get(uri, response);
+			return;
+		}
+
+		requests.increment();
+		CapturingResponse capture = new CapturingResponse(response, maxSharedBytes);
+		try {
+			client.get(uri, capture);
+			byte[] body = capture.getBody();
+			flight.complete(body == null ? null : new Shared(capture.getHeaders(), body));
+		} catch (IOException e) {
+			if (capture.isTargetFailed()) {
+				// The caller's own stream failed, waiting callers make their own requests.
+				flight.complete(null);
+			} else {
+				flight.completeExceptionally(e);
+			}
+			throw e;
+		} catch (RuntimeException e) {
+			// Likely from the caller's response stream, waiting callers should not be affected.
+			flight.complete(null);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		return client.head(uri);
+	}
+
+	/**
+	 * @return number of GET requests sent to the server
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return number of GET calls that waited for a concurrent identical request
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @param timeout null to wait until the shared request completes
+	 */
+	private Shared await(CompletableFuture<Shared> flight, String key, Duration timeout) throws IOException {
+		try {
+			if (timeout == null) {
+				return flight.get();
+			}
+			return flight.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			throw new HttpTimeoutException("Coalesced GET " + key + " not completed within " + timeout);
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static class Shared {
+
+		private final ResponseHeaders headers;
+		private final byte[] body;
+
+		Shared(ResponseHeaders headers, byte[] body) {
+			this.headers = headers;
+			this.body = body;
+		}
+
+	}
+
+}
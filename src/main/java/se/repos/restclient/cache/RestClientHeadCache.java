@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseChannel;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.RestResponseRange;
+
+/**
+ * Short-lived cache of HEAD results, for the common pattern of checking existence or revision before GET.
+ *
+ * Concurrent HEAD requests for the same uri share a single request to the server.
+ * Failures are not cached, but shared with the requests that waited for them.
+ * A GET through this client invalidates the entry for its uri,
+ * or refreshes it with the GET response headers if {@link #setRefreshOnGet(boolean)}.
+ * Range, channel and publisher GETs are passed on unchanged and only invalidate.
+ */
+public class RestClientHeadCache implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientHeadCache.class);
+
+	/**
+	 * Default: {@value #DEFAULT_TTL_MILLIS} ms.
+	 */
+	public static final long DEFAULT_TTL_MILLIS = 1000;
+
+	/**
+	 * Default: {@value #DEFAULT_MAX_ENTRIES}.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private final RestClient client;
+	private final long ttlNanos;
+	private final int maxEntries;
+	private boolean refreshOnGet = false;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public RestClientHeadCache(RestClient client) {
+		this(client, DEFAULT_TTL_MILLIS);
+	}
+
+	/**
+	 * @param client the client to make requests with
+	 * @param ttlMillis how long a HEAD result is reused
+	 */
+	public RestClientHeadCache(RestClient client, long ttlMillis) {
+		this(client, ttlMillis, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param client the client to make requests with
+	 * @param ttlMillis how long a HEAD result is reused
+	 * @param maxEntries maximum number of cached HEAD results, expired results are removed first when full
+	 */
+	public RestClientHeadCache(RestClient client, long ttlMillis, int maxEntries) {
+		this.client = client;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @param refreshOnGet true to replace the HEAD result with the headers of a successful GET,
+	 *  false (default) to only invalidate
+	 */
+	public void setRefreshOnGet(boolean refreshOnGet) {
+		this.refreshOnGet = refreshOnGet;
+	}
+
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		while (true) {
+			Entry existing = entries.get(uri);
+			if (existing != null && !existing.isExpired()) {
+				if (existing.isDone()) {
+					hits.increment();
+				} else {
+					coalesced.increment();
+				}
+				return existing.await();
+			}
+			Entry created = new Entry();
+			boolean owner = existing == null
+					? entries.putIfAbsent(uri, created) == null
+					: entries.replace(uri, existing, created);
+			if (!owner) {
+				// Another thread started a request, retry lookup
+				continue;
+			}
+			misses.increment();
+			evict();
+			try {
+				ResponseHeaders headers = client.head(uri);
+				created.complete(headers, System.nanoTime() + ttlNanos);
+				return headers;
+			} catch (IOException e) {
+				entries.remove(uri, created);
+				created.result.completeExceptionally(e);
+				throw e;
+			} catch (RuntimeException e) {
+				entries.remove(uri, created);
+				created.result.completeExceptionally(e);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		if (!refreshOnGet || response instanceof RestResponseRange
+				|| response instanceof RestResponseChannel || response instanceof RestResponsePublisher) {
+			try {
+				client.get(uri, response);
+			} finally {
+				invalidate(uri);
+			}
+			return;
+		}
+		CapturingResponse headers = new CapturingResponse(response, 0);
+		try {
+			client.get(uri, headers);
+		} catch (IOException e) {
+			invalidate(uri);
+			throw e;
+		} catch (RuntimeException e) {
+			invalidate(uri);
+			throw e;
+		}
+		if (headers.getHeaders() != null && headers.getHeaders().getStatus() == HttpURLConnection.HTTP_OK) {
+			Entry refreshed = new Entry();
+			refreshed.complete(headers.getHeaders(), System.nanoTime() + ttlNanos);
+			entries.put(uri, refreshed);
+			evict();
+		} else {
+			invalidate(uri);
+		}
+	}
+
+	/**
+	 * Keeps the number of entries within the limit, removing expired entries
+	 * and then those that expire first. Requests in progress are not removed.
+	 */
+	private void evict() {
+		if (entries.size() <= maxEntries) {
+			return;
+		}
+		entries.values().removeIf(Entry::isExpired);
+		while (entries.size() > maxEntries) {
+			Map.Entry<String, Entry> first = null;
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				if (e.getValue().isDone() && (first == null || e.getValue().expires - first.getValue().expires < 0)) {
+					first = e;
+				}
+			}
+			if (first == null) {
+				return;
+			}
+			entries.remove(first.getKey(), first.getValue());
+			logger.trace("Evicted HEAD {}", first.getKey());
+		}
+	}
+
+	/**
+	 * @return number of cached HEAD results, including requests in progress
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes the cached HEAD result for a uri, if any.
+	 * Requests that are already waiting for a result will get it.
+	 */
+	public void invalidate(String uri) {
+		Entry removed = entries.remove(uri);
+		if (removed != null) {
+			logger.trace("Invalidated HEAD {}", uri);
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return number of HEAD results reused from cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of HEAD requests that waited for a concurrent request for the same uri
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return number of HEAD requests sent to the server
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	private static class Entry {
+
+		private final CompletableFuture<ResponseHeaders> result = new CompletableFuture<ResponseHeaders>();
+		private volatile long expires;
+
+		void complete(ResponseHeaders headers, long expires) {
+			this.expires = expires;
+			result.complete(headers);
+		}
+
+		boolean isDone() {
+			return result.isDone();
+		}
+
+		/**
+		 * @return true if completed and older than the TTL, a pending request is never expired
+		 */
+		boolean isExpired() {
+			return result.isDone() && (result.isCompletedExceptionally() || System.nanoTime() - expires >= 0);
+		}
+
+		ResponseHeaders await() throws IOException {
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time when a response body must have been received,
+ * so that a stalled or trickling transfer is cancelled.
+ * 
+ * HttpRequest timeout only covers the time until headers are received.
+ */
+final class BodyDeadline {
+
+	private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread t = new Thread(r, "restclient-body-deadline");
+		t.setDaemon(true);
+		return t;
+	});
+	static {
+		timer.setRemoveOnCancelPolicy(true);
+	}
+	
+	private final long deadline;
+	
+	private BodyDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * @param timeout from now, null for no deadline
+	 * @return null if timeout is null
+	 */
+	static BodyDeadline after(Duration timeout) {
+		if (timeout == null) {
+			return null;
+		}
+		return new BodyDeadline(System.nanoTime() + timeout.toNanos());
+	}
+	
+	long remainingNanos() {
+		return deadline - System.nanoTime();
+	}
+	
+	/**
+	 * @param expire must be quick and must not block, runs on a shared timer thread
+	 * @return for cancelling when the body has been received
+	 */
+	ScheduledFuture<?> schedule(Runnable expire) {
+		return timer.schedule(expire, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+	}
+	
+	HttpTimeoutException exceeded() {
+		return new HttpTimeoutException("Response body not received within deadline");
+	}
+	
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.net.http.HttpResponse.BodySubscriber;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The body future, the subscription to the HttpClient and the deadline,
+ * for subscribers that hand the body over as it arrives and complete when it has been handled.
+ */
+abstract class BodySubscriberBase implements BodySubscriber<Void> {
+
+	final CompletableFuture<Void> body = new CompletableFuture<Void>();
+	final RequestEvents events;
+	private final BodyDeadline deadline;
+	private volatile Flow.Subscription subscription;
+	
+	/**
+	 * @param events null if not instrumented
+	 * @param deadline null for no deadline, otherwise the body fails and the transfer is cancelled at the deadline
+	 */
+	BodySubscriberBase(RequestEvents events, BodyDeadline deadline) {
+		this.events = events;
+		this.deadline = deadline;
+	}
+	
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		if (deadline != null) {
+			ScheduledFuture<?> expiry = deadline.schedule(() -> fail(deadline.exceeded()));
+			body.whenComplete((v, e) -> expiry.cancel(false));
+		}
+		onSubscribed();
+	}
+	
+	/**
+	 * Called when the HttpClient has subscribed, typically to {@link #request()} the first buffers.
+	 */
+	abstract void onSubscribed();
+	
+	boolean isSubscribed() {
+		return subscription != null;
+	}
+	
+	/**
+	 * Requests the next buffers from the HttpClient.
+	 */
+	void request() {
+		subscription.request(1);
+	}
+	
+	/**
+	 * Cancels the transfer, if the HttpClient has subscribed.
+	 */
+	void cancel() {
+		Flow.Subscription s = subscription;
+		if (s != null) {
+			s.cancel();
+		}
+	}
+	
+	/**
+	 * Fails the body and cancels the transfer, unless the body is already done.
+	 */
+	void fail(Throwable e) {
+		if (body.completeExceptionally(e)) {
+			cancel();
+		}
+	}
+	
+	@Override
+	public void onError(Throwable throwable) {
+		fail(throwable);
+	}
+	
+	@Override
+	public CompletionStage<Void> getBody() {
+		return body;
+	}
+	
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Writes the buffers received by the HttpClient directly to a channel,
+ * requesting the next buffers only after the previous ones have been written.
+ * 
+ * Does not close the channel, that is handled by the calling class.
+ */
+class BodySubscriberChannel extends BodySubscriberBase {
+
+	private final WritableByteChannel receiver;
+	
+	/**
+	 * @param events null if not instrumented
+	 * @param deadline null for no deadline, otherwise the transfer is cancelled at the deadline
+	 *  though a write that is in progress is not interrupted
+	 */
+	BodySubscriberChannel(WritableByteChannel receiver, RequestEvents events, BodyDeadline deadline) {
+		super(events, deadline);
+		this.receiver = receiver;
+	}
+	
+	@Override
+	void onSubscribed() {
+		request();
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> item) {
+		if (body.isDone()) {
+			// Expired
+			return;
+		}
+		try {
+			if (events != null) {
+				events.addBytes(remaining(item));
+			}
+			write(item);
+		} catch (IOException e) {
+			fail(e);
+			return;
+		}
+		request();
+	}
+	
+	private static long remaining(List<ByteBuffer> item) {
+		long n = 0;
+		for (ByteBuffer b : item) {
+			n += b.remaining();
+		}
+		return n;
+	}
+	
+	private void write(List<ByteBuffer> item) throws IOException {
+		if (receiver instanceof GatheringByteChannel && item.size() > 1) {
+			ByteBuffer[] buffers = item.toArray(new ByteBuffer[item.size()]);
+			ByteBuffer last = buffers[buffers.length - 1];
+			while (last.hasRemaining()) {
+				((GatheringByteChannel) receiver).write(buffers);
+			}
+			return;
+		}
+		for (ByteBuffer b : item) {
+			while (b.hasRemaining()) {
+				receiver.write(b);
+			}
+		}
+	}
+
+	@Override
+	public void onComplete() {
+		body.complete(null);
+	}
+
+}
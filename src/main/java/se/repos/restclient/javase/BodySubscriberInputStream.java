@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Like BodySubscribers.ofInputStream but reads fail when the deadline has passed,
+ * also if blocked waiting for the server, so the body is still read by the calling thread.
+ */
+class BodySubscriberInputStream extends InputStream implements BodySubscriber<InputStream> {
+
+	private static final List<ByteBuffer> END = Collections.emptyList();
+	
+	private final BodyDeadline deadline;
+	// At most one item requested at a time, plus END
+	private final BlockingQueue<List<ByteBuffer>> items = new LinkedBlockingQueue<List<ByteBuffer>>();
+	private volatile Flow.Subscription subscription;
+	private volatile Throwable error = null;
+	private Iterator<ByteBuffer> item = null;
+	private ByteBuffer buffer = null;
+	private boolean eof = false;
+	// Thrown again on every read after the body failed
+	private IOException failure = null;
+	private volatile boolean closed = false;
+	
+	BodySubscriberInputStream(BodyDeadline deadline) {
+		this.deadline = deadline;
+	}
+	
+	@Override
+	public CompletionStage<InputStream> getBody() {
+		return CompletableFuture.completedFuture(this);
+	}
+	
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		if (closed) {
+			subscription.cancel();
+			return;
+		}
+		subscription.request(1);
+	}
+	
+	@Override
+	public void onNext(List<ByteBuffer> next) {
+		items.offer(next);
+	}
+	
+	@Override
+	public void onError(Throwable throwable) {
+		error = throwable;
+		items.offer(END);
+	}
+	
+	@Override
+	public void onComplete() {
+		items.offer(END);
+	}
+	
+	/**
+	 * @return a buffer with remaining bytes, null at end of body
+	 */
+	private ByteBuffer current() throws IOException {
+		while (buffer == null || !buffer.hasRemaining()) {
+			if (closed) {
+				throw new IOException("closed");
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			if (eof) {
+				return null;
+			}
+			if (item != null && item.hasNext()) {
+				buffer = item.next();
+				continue;
+			}
+			if (item != null) {
+				item = null;
+				subscription.request(1);
+			}
+			List<ByteBuffer> next;
+			try {
+				next = items.poll(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted", e);
+			}
+			if (next == null) {
+				close();
+				throw deadline.exceeded();
+			}
+			if (next == END) {
+				eof = true;
+				if (error != null) {
+					failure = error instanceof IOException ? (IOException) error : new IOException(error);
+					throw failure;
+				}
+				return null;
+			}
+			item = next.iterator();
+		}
+		return buffer;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		ByteBuffer b = current();
+		return b == null ? -1 : b.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		ByteBuffer c = current();
+		if (c == null) {
+			return -1;
+		}
+		int n = Math.min(len, c.remaining());
+		c.get(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public int available() {
+		return buffer == null ? 0 : buffer.remaining();
+	}
+	
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (!eof && subscription != null) {
+			subscription.cancel();
+		}
+	}
+	
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Writes the response body to an OutputStream as buffers arrive,
+ * requesting the next buffers only after the previous ones have been written.
+ * 
+ * Does not close the stream, that is handled by the calling class like in the blocking get.
+ */
+class BodySubscriberOutputStream extends BodySubscriberBase {
+
+	private final OutputStream receiver;
+	private byte[] copy = null;
+	
+	/**
+	 * @param events null if not instrumented
+	 * @param deadline null for no deadline, otherwise the transfer is cancelled at the deadline
+	 *  though a write that is in progress is not interrupted
+	 */
+	BodySubscriberOutputStream(OutputStream receiver, RequestEvents events, BodyDeadline deadline) {
+		super(events, deadline);
+		this.receiver = receiver;
+	}
+	
+	@Override
+	void onSubscribed() {
+		request();
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> item) {
+		if (body.isDone()) {
+			// Expired
+			return;
+		}
+		try {
+			for (ByteBuffer b : item) {
+				write(b);
+			}
+		} catch (IOException e) {
+			fail(e);
+			return;
+		}
+		request();
+	}
+	
+	private void write(ByteBuffer b) throws IOException {
+		int length = b.remaining();
+		if (events != null) {
+			events.addBytes(length);
+		}
+		if (b.hasArray()) {
+			receiver.write(b.array(), b.arrayOffset() + b.position(), length);
+			b.position(b.limit());
+			return;
+		}
+		// HttpClient normally delivers heap buffers, reuse a copy buffer if not
+		if (copy == null || copy.length < length) {
+			copy = new byte[length];
+		}
+		b.get(copy, 0, length);
+		receiver.write(copy, 0, length);
+	}
+
+	@Override
+	public void onComplete() {
+		body.complete(null);
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the buffers received by the HttpClient one at a time to a single subscriber,
+ * requesting the next buffers from the HttpClient only when the subscriber has demand.
+ * 
+ * The body completes when the subscriber has been completed, failed or has cancelled.
+ */
+class BodySubscriberPublisher extends BodySubscriberBase implements Flow.Publisher<ByteBuffer> {
+
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicReference<Flow.Subscriber<? super ByteBuffer>> subscriber = new AtomicReference<Flow.Subscriber<? super ByteBuffer>>();
+	private final AtomicLong demand = new AtomicLong();
+	private final AtomicInteger draining = new AtomicInteger();
+	private volatile boolean requested = false;
+	private volatile boolean received = false;
+	private volatile Throwable failure = null;
+	private volatile boolean done = false;
+	
+	/**
+	 * @param events null if not instrumented
+	 * @param deadline null for no deadline, otherwise the transfer is cancelled at the deadline
+	 */
+	BodySubscriberPublisher(RequestEvents events, BodyDeadline deadline) {
+		super(events, deadline);
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super ByteBuffer> s) {
+		if (!subscriber.compareAndSet(null, s)) {
+			s.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+				@Override
+				public void cancel() {
+				}
+			});
+			s.onError(new IllegalStateException("Response body can only be subscribed to once"));
+			return;
+		}
+		s.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				if (n <= 0) {
+					fail(new IllegalArgumentException("Subscriber requested " + n + " buffers"));
+					return;
+				}
+				demand.getAndAccumulate(n, (d, m) -> d + m < 0 ? Long.MAX_VALUE : d + m);
+				drain();
+			}
+			@Override
+			public void cancel() {
+				done = true;
+				buffers.clear();
+				BodySubscriberPublisher.this.cancel();
+				body.complete(null);
+			}
+		});
+		drain();
+	}
+	
+	@Override
+	void onSubscribed() {
+		if (done) {
+			cancel();
+			return;
+		}
+		drain();
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> item) {
+		long bytes = 0;
+		for (ByteBuffer b : item) {
+			bytes += b.remaining();
+			if (b.hasRemaining()) {
+				buffers.add(b);
+			}
+		}
+		if (events != null) {
+			events.addBytes(bytes);
+		}
+		requested = false;
+		drain();
+	}
+
+	@Override
+	public void onComplete() {
+		received = true;
+		drain();
+	}
+
+	/**
+	 * Fails the body immediately, discarding buffers that the subscriber has not yet received.
+	 */
+	@Override
+	void fail(Throwable e) {
+		if (failure == null) {
+			failure = e;
+		}
+		super.fail(e);
+		drain();
+	}
+	
+	/**
+	 * Delivers buffers as long as there is demand, from one thread at a time.
+	 * Signals from the HttpClient and from the subscriber may arrive concurrently,
+	 * whoever arrives while another thread is draining makes that thread loop once more.
+	 */
+	private void drain() {
+		if (draining.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			Flow.Subscriber<? super ByteBuffer> s = subscriber.get();
+			if (s != null && !done) {
+				try {
+					deliver(s);
+				} catch (RuntimeException e) {
+					// Subscriber broke the contract by throwing
+					done = true;
+					buffers.clear();
+					cancel();
+					body.completeExceptionally(new IOException("Response body subscriber failed", e));
+				}
+			}
+			missed = draining.addAndGet(-missed);
+		} while (missed != 0);
+	}
+	
+	private void deliver(Flow.Subscriber<? super ByteBuffer> s) {
+		if (failure != null) {
+			done = true;
+			buffers.clear();
+			s.onError(failure);
+			return;
+		}
+		ByteBuffer next;
+		while (demand.get() > 0 && (next = buffers.poll()) != null) {
+			if (demand.get() != Long.MAX_VALUE) {
+				demand.decrementAndGet();
+			}
+			s.onNext(next);
+			if (done || failure != null) {
+				return;
+			}
+		}
+		if (!buffers.isEmpty()) {
+			return;
+		}
+		if (received) {
+			done = true;
+			s.onComplete();
+			body.complete(null);
+			return;
+		}
+		if (demand.get() > 0 && !requested && isSubscribed()) {
+			requested = true;
+			request();
+		}
+	}
+	
+}
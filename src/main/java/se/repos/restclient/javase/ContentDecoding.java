@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Streaming decompression of response bodies, for the encodings the JDK supports.
+ * Brotli is not supported because there is no implementation in the JDK.
+ */
+final class ContentDecoding {
+
+	static final String ACCEPT_ENCODING_HEADER_NAME = "Accept-Encoding";
+	static final String CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
+	
+	/**
+	 * The value we send in Accept-Encoding.
+	 */
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private ContentDecoding() {
+	}
+	
+	/**
+	 * @param contentEncoding header value, may be null
+	 * @return true if the body should be decoded with {@link #decode(String, InputStream)}
+	 */
+	static boolean isSupported(String contentEncoding) {
+		return isGzip(contentEncoding) || isDeflate(contentEncoding);
+	}
+	
+	private static boolean isGzip(String contentEncoding) {
+		return "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding);
+	}
+	
+	private static boolean isDeflate(String contentEncoding) {
+		return "deflate".equalsIgnoreCase(contentEncoding);
+	}
+	
+	/**
+	 * @param contentEncoding must be supported
+	 * @param encoded the body as received
+	 * @return the decoded body, reading from the encoded stream as needed
+	 */
+	static InputStream decode(String contentEncoding, InputStream encoded) throws IOException {
+		if (!isSupported(contentEncoding)) {
+			throw new IllegalArgumentException("Unsupported content encoding: " + contentEncoding);
+		}
+		PushbackInputStream in = new PushbackInputStream(encoded, 2);
+		byte[] head = new byte[2];
+		int read = 0;
+		while (read < head.length) {
+			int n = in.read(head, read, head.length - read);
+			if (n < 0) {
+				break;
+			}
+			read += n;
+		}
+		if (read == 0) {
+			// Typical for error responses, the decoders would fail on empty input
+			return InputStream.nullInputStream();
+		}
+		in.unread(head, 0, read);
+		if (isGzip(contentEncoding)) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		// The spec says zlib format, but some servers send raw deflate
+		boolean zlib = read == 2 && (head[0] & 0x0F) == 8 && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Counts the bytes read, for the encoded length.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		
+		private long count = 0;
+		
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+		long getCount() {
+			return count;
+		}
+		
+	}
+	
+}
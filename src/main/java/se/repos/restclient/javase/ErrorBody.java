@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the start of an error response body, up to a limit, discarding the rest.
+ */
+class ErrorBody extends ByteArrayOutputStream {
+
+	private final int max;
+	private boolean truncated = false;
+	
+	/**
+	 * @param max bytes to keep
+	 */
+	ErrorBody(int max) {
+		super(Math.min(max, 1024));
+		this.max = max;
+	}
+	
+	/**
+	 * Reads at most max bytes, the stream should be closed after this to discard the rest.
+	 */
+	static ErrorBody read(InputStream in, int max) throws IOException {
+		ErrorBody b = new ErrorBody(max);
+		b.write(in.readNBytes(max));
+		b.truncated = in.read() != -1;
+		return b;
+	}
+	
+	@Override
+	public synchronized void write(int b) {
+		if (count < max) {
+			super.write(b);
+		} else {
+			truncated = true;
+		}
+	}
+	
+	@Override
+	public synchronized void write(byte[] b, int off, int len) {
+		int keep = Math.min(len, max - count);
+		if (keep > 0) {
+			super.write(b, off, keep);
+		}
+		if (keep < len) {
+			truncated = true;
+		}
+	}
+	
+	boolean isTruncated() {
+		return truncated;
+	}
+	
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.net.URL;
+
+import se.repos.restclient.RestRequestListener;
+
+/**
+ * Tracks a single request for a {@link RestRequestListener}.
+ * Only created when there is a listener, callers check for null to avoid any overhead otherwise.
+ */
+class RequestEvents {
+
+	private final RestRequestListener listener;
+	private final String method;
+	private final URL url;
+	private final long start;
+	private volatile int status = 0;
+	// Written by one thread at a time, read after completion
+	private volatile long bytes = 0;
+	
+	private RequestEvents(RestRequestListener listener, String method, URL url) {
+		this.listener = listener;
+		this.method = method;
+		this.url = url;
+		this.start = System.nanoTime();
+	}
+	
+	/**
+	 * @return null if listener is null
+	 */
+	static RequestEvents start(RestRequestListener listener, String method, URL url) {
+		if (listener == null) {
+			return null;
+		}
+		RequestEvents events = new RequestEvents(listener, method, url);
+		listener.requestStarted(method, url);
+		return events;
+	}
+	
+	void headers(int status) {
+		this.status = status;
+		listener.headersReceived(method, url, status, System.nanoTime() - start);
+	}
+	
+	void addBytes(long count) {
+		bytes += count;
+	}
+	
+	void completed() {
+		listener.requestCompleted(method, url, status, bytes, System.nanoTime() - start);
+	}
+	
+	void failed(Throwable error) {
+		listener.requestFailed(method, url, status, error, System.nanoTime() - start);
+	}
+	
+}
@@ -15,25 +15,65 @@
  */
 package se.repos.restclient.javase;
 
-import java.io.IOException;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.util.List;
 
 import se.repos.restclient.base.ResponseHeadersMap;
 
+/**
+ * View of the HttpClient's headers, which are already a case insensitive map, without copying.
+ */
 class ResponseHeadersJavaHttp extends ResponseHeadersMap {
 
-	private String contentType;
-	private int status;
+	private final HttpHeaders headers;
+	private final int status;
+
+	public ResponseHeadersJavaHttp(HttpResponse<?> response) {
+		this(response.statusCode(), response.headers());
+	}
 
-	public ResponseHeadersJavaHttp(HttpResponse<?> response) throws IOException {
-		super(response.headers().map());
-		this.status = response.statusCode();
-		this.contentType = response.headers().firstValue("Content-Type").orElse(null);
+	/**
+	 * For use in a body handler, before the body has been read.
+	 */
+	public ResponseHeadersJavaHttp(ResponseInfo info) {
+		this(info.statusCode(), info.headers());
+	}
+
+	private ResponseHeadersJavaHttp(int status, HttpHeaders headers) {
+		super(headers.map());
+		this.status = status;
+		this.headers = headers;
 	}
 
 	@Override
 	public String getContentType() {
-		return contentType;
+		return getFirst("Content-Type");
+	}
+	
+	@Override
+	public String getFirst(String name) {
+		return headers.firstValue(name).orElse(null);
+	}
+	
+	@Override
+	public List<String> getValues(String name) {
+		return headers.allValues(name);
+	}
+	
+	@Override
+	public long getContentLength() {
+		try {
+			return headers.firstValueAsLong("Content-Length").orElse(-1);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	@Override
+	public HttpHeaders getHttpHeaders() {
+		return headers;
 	}
 
 	@Override
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.net.http.HttpResponse;
+
+import se.repos.restclient.ResponseHeadersDecoded;
+
+class ResponseHeadersJavaHttpDecoded extends ResponseHeadersJavaHttp implements ResponseHeadersDecoded {
+
+	private final String contentEncoding;
+	private volatile long encodedLength = -1;
+	private volatile long decodedLength = -1;
+	
+	ResponseHeadersJavaHttpDecoded(HttpResponse<?> response, String contentEncoding) {
+		super(response);
+		this.contentEncoding = contentEncoding;
+	}
+	
+	void setLengths(long encoded, long decoded) {
+		this.encodedLength = encoded;
+		this.decodedLength = decoded;
+	}
+	
+	@Override
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+	
+	@Override
+	public long getEncodedLength() {
+		return encodedLength;
+	}
+	
+	@Override
+	public long getDecodedLength() {
+		return decodedLength;
+	}
+	
+}
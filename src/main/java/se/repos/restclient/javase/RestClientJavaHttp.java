@@ -15,24 +15,38 @@
  */
 package se.repos.restclient.javase;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
 import java.nio.channels.UnresolvedAddressException;
+import java.nio.channels.WritableByteChannel;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -43,36 +57,62 @@ import org.slf4j.LoggerFactory;
 
 import se.repos.restclient.HttpStatusError;
 import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.ResponseHeadersDecoded;
+import se.repos.restclient.RestAsyncClient;
 import se.repos.restclient.RestAuthentication;
+import se.repos.restclient.RestRequestListener;
 import se.repos.restclient.RestResponse;
 import se.repos.restclient.RestResponseAccept;
+import se.repos.restclient.RestResponseChannel;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.RestResponseConditional;
+import se.repos.restclient.RestResponseRange;
+import se.repos.restclient.RestResponseTimeout;
 import se.repos.restclient.base.Codecs;
 import se.repos.restclient.base.RestClientUrlBase;
 
 /**
  * REST client using java.net.http introduced in Java 11.
  * 
- * Always using Keep-Alive, no configuration.
+ * Always using Keep-Alive, pool and timeout settings in {@link RestClientJavaHttpConfig}.
  * Basic Authentication is forced if the RestAuthentication provides a username (no retry on 401).
  * Default proxy config.
  * Default CookieManager.
+ * 
+ * The {@link RestAsyncClient} methods use the same HttpClient instances as the blocking methods.
+ * Bodies for {@link RestResponseChannel} are written as received, without going through an InputStream.
+ * Bodies for {@link RestResponsePublisher} are read from the connection as the subscriber requests them.
+ * Compressed responses are opt-in, see {@link #setAcceptEncoding(boolean)}.
  */
-public class RestClientJavaHttp extends RestClientUrlBase {
+public class RestClientJavaHttp extends RestClientUrlBase implements RestAsyncClient, AutoCloseable {
 
 	private static final Logger logger = LoggerFactory.getLogger(RestClientJavaHttp.class);
 
+	static final String METHOD_GET = "GET";
+	static final String METHOD_HEAD = "HEAD";
+	
 	public static final String ACCEPT_HEADER_NAME = "Accept"; 
 	public static final String AUTH_HEADER_NAME = "Authorization"; 
 	public static final String AUTH_HEADER_PREFIX = "Basic ";
+	public static final String IF_NONE_MATCH_HEADER_NAME = "If-None-Match";
+	public static final String IF_MODIFIED_SINCE_HEADER_NAME = "If-Modified-Since";
+	public static final String RANGE_HEADER_NAME = "Range";
+	public static final String IF_RANGE_HEADER_NAME = "If-Range";
 	
 	/**
 	 * Timeout in milliseconds.
 	 * Default: {@value #DEFAULT_CONNECT_TIMEOUT}.
 	 */
 	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	
+	/**
+	 * Bytes of an error response body that are kept.
+	 * Default: {@value #DEFAULT_MAX_ERROR_BODY}.
+	 */
+	public static final int DEFAULT_MAX_ERROR_BODY = 64 * 1024;
 	// No method for setting connect timeout per-request, only the total timeout.
 	// https://bugs.openjdk.java.net/browse/JDK-8209075
-	// TODO: Consider method for setting timeout, need to rebuild the clients.
+	// Client settings are in RestClientJavaHttpConfig, applied when the clients are built.
 	
 
 	private RestAuthentication auth;
@@ -80,33 +120,154 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 	
 	private HttpClient clientRedirectNormal;
 	private HttpClient clientRedirectNever;
+	private Duration requestTimeout;
+	private Duration bodyTimeout;
+	private int maxErrorBody;
+	private ExecutorService executor = null;
+	private RestRequestListener listener = null;
+	private boolean acceptEncoding = false;
+	// Set when the first instance builds its HttpClients
+	private static volatile boolean clientCreated = false;
+	// A new unset instance on each refresh, value is empty if the authentication has no username
+	private final AtomicReference<AuthHeader> authHeaderBasic = new AtomicReference<AuthHeader>(new AuthHeader(null));
 	
 	
 	@Inject
 	public RestClientJavaHttp(
 			@Named("config:se.repos.restclient.serverRootUrl") String serverRootUrl,
 			RestAuthentication auth) {
+		this(serverRootUrl, auth, new RestClientJavaHttpConfig());
+	}
+	
+	/**
+	 * @param serverRootUrl
+	 * @param auth
+	 * @param virtualThreads true to run the HttpClient instances, i.e. async completions and body streaming,
+	 *  on a virtual-thread-per-task executor, see {@link #getExecutor()}.
+	 *  Falls back to an unbounded pool of daemon threads on Java versions without virtual threads.
+	 *  Call {@link #close()} when the client is no longer used.
+	 */
+	public RestClientJavaHttp(
+			@Named("config:se.repos.restclient.serverRootUrl") String serverRootUrl,
+			RestAuthentication auth,
+			boolean virtualThreads) {
+		this(serverRootUrl, auth, configVirtualThreads(virtualThreads));
+	}
+	
+	private static RestClientJavaHttpConfig configVirtualThreads(boolean virtualThreads) {
+		RestClientJavaHttpConfig config = new RestClientJavaHttpConfig();
+		config.setVirtualThreads(virtualThreads);
+		return config;
+	}
+	
+	/**
+	 * @param serverRootUrl
+	 * @param auth
+	 * @param config applied to both HttpClient instances
+	 */
+	public RestClientJavaHttp(
+			@Named("config:se.repos.restclient.serverRootUrl") String serverRootUrl,
+			RestAuthentication auth,
+			RestClientJavaHttpConfig config) {
 		super(serverRootUrl);
 		this.auth = auth;
+		this.requestTimeout = config.getRequestTimeout();
+		this.bodyTimeout = config.getBodyTimeout();
+		this.maxErrorBody = config.getMaxErrorBody();
 		
 		HttpClient.Builder builderRedirectNormal = HttpClient.newBuilder()
-				.connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT))
 				.followRedirects(HttpClient.Redirect.NORMAL);
 		
 		HttpClient.Builder builderRedirectNever = HttpClient.newBuilder()
-				.connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT))
 				.followRedirects(HttpClient.Redirect.NEVER);
+		
+		if (config.getConnectTimeout() != null) {
+			builderRedirectNormal.connectTimeout(config.getConnectTimeout());
+			builderRedirectNever.connectTimeout(config.getConnectTimeout());
+		}
+		if (config.getVersion() != null) {
+			builderRedirectNormal.version(config.getVersion());
+			builderRedirectNever.version(config.getVersion());
+		}
 
 		SSLContext sslContext = (auth == null) ? null : auth.getSSLContext(serverRootUrl);
 		if (sslContext != null) {
 			builderRedirectNormal.sslContext(sslContext);
 			builderRedirectNever.sslContext(sslContext);
 		}
+		if (config.isVirtualThreads()) {
+			this.executor = newVirtualThreadExecutor();
+			builderRedirectNormal.executor(executor);
+			builderRedirectNever.executor(executor);
+		}
+		clientCreated = true;
 		this.clientRedirectNormal = builderRedirectNormal.build();
 		this.clientRedirectNever = builderRedirectNever.build();
 	}
 	
+	/**
+	 * @return true if an instance has built its HttpClients, after which JVM wide HttpClient properties are read
+	 */
+	static boolean isClientCreated() {
+		return clientCreated;
+	}
 	
+	/**
+	 * Uses Executors.newVirtualThreadPerTaskExecutor if the runtime has it (Java 21+),
+	 * looked up reflectively because this library is compiled for an older Java release.
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			logger.debug("Using virtual thread per task executor");
+			return (ExecutorService) m.invoke(null);
+		} catch (NoSuchMethodException e) {
+			logger.warn("Virtual threads not supported by Java {}, using cached daemon thread pool", System.getProperty("java.version"));
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Failed to create virtual thread executor", e);
+		}
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private final ThreadFactory threads = Executors.defaultThreadFactory();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = threads.newThread(r);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * @return request builder with the settings that apply to all requests
+	 */
+	private HttpRequest.Builder newRequestBuilder() {
+		HttpRequest.Builder builder = HttpRequest.newBuilder();
+		if (requestTimeout != null) {
+			builder.timeout(requestTimeout);
+		}
+		return builder;
+	}
+	
+	/**
+	 * Can be used to run blocking {@link #get(URL, RestResponse)} and {@link #head(URL)} callers
+	 * on the same threads as the HttpClient instances, for example virtual threads.
+	 * @return the executor used by the HttpClient instances, null if the JDK default is used
+	 */
+	public ExecutorService getExecutor() {
+		return this.executor;
+	}
+	
+	/**
+	 * Shuts down the executor that this client created for virtual threads, if any.
+	 * Requests that are in progress complete, new requests fail.
+	 * Does nothing for clients that use the JDK default executor.
+	 */
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
 	
 	/** Experimental, exposing the HttpClient since POST is not implemented in the Restclient interface.
 	 * @return a Java HttpClient built for POST
@@ -118,20 +279,8 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 	// Public API, performs BASIC authentication if RestAuthentication has username.
 	@Override
 	public void get(URL url, RestResponse response) throws IOException, HttpStatusError {
-		Map<String,String> requestHeaders = new HashMap<String, String>(2);
-		if (response instanceof RestResponseAccept) {
-			requestHeaders.put(ACCEPT_HEADER_NAME, ((RestResponseAccept) response).getAccept());
-		}
-		
+		Map<String,String> requestHeaders = getRequestHeaders(response);
 		try {
-			// There are 2 approaches to making BASIC Auth efficient:
-			// - Remembering that Auth was needed after the first request. Per path? Per user?
-			// - Indicating to the implementation to always send auth. Inherently per host unless multiple Restclient instances are created. 
-			if (authenticationForced && isAuthBasic()) {
-				String username = auth.getUsername(null, null, null);
-				logger.debug("Authenticating user {}, forced", username);
-				setAuthHeaderBasic(requestHeaders, username, auth.getPassword(null, null, null, username));
-			}
 			get(url, response, requestHeaders);
 		} catch (HttpStatusError e) {
 			// No longer support BASIC auth following 401, using forced auth instead.
@@ -139,44 +288,121 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 		}
 	}
 	
+	/**
+	 * @param response the response that the request is made for
+	 * @return Accept, conditional, range and forced BASIC authentication headers
+	 */
+	private Map<String,String> getRequestHeaders(RestResponse response) {
+		Map<String,String> requestHeaders = new HashMap<String, String>(2);
+		if (response instanceof RestResponseAccept) {
+			String accept = ((RestResponseAccept) response).getAccept();
+			if (accept != null) {
+				requestHeaders.put(ACCEPT_HEADER_NAME, accept);
+			}
+		}
+		if (response instanceof RestResponseConditional) {
+			RestResponseConditional conditional = (RestResponseConditional) response;
+			if (conditional.getIfNoneMatch() != null) {
+				requestHeaders.put(IF_NONE_MATCH_HEADER_NAME, conditional.getIfNoneMatch());
+			}
+			if (conditional.getIfModifiedSince() != null) {
+				requestHeaders.put(IF_MODIFIED_SINCE_HEADER_NAME, conditional.getIfModifiedSince());
+			}
+		}
+		if (response instanceof RestResponseRange) {
+			RestResponseRange range = (RestResponseRange) response;
+			long end = range.getRangeEnd();
+			requestHeaders.put(RANGE_HEADER_NAME, "bytes=" + range.getRangeStart() + '-' + (end < 0 ? "" : Long.toString(end)));
+			if (range.getIfRange() != null) {
+				requestHeaders.put(IF_RANGE_HEADER_NAME, range.getIfRange());
+			}
+		}
+		// There are 2 approaches to making BASIC Auth efficient:
+		// - Remembering that Auth was needed after the first request. Per path? Per user?
+		// - Indicating to the implementation to always send auth. Inherently per host unless multiple Restclient instances are created. 
+		if (authenticationForced) {
+			String authHeader = getAuthHeaderBasic();
+			if (authHeader != null) {
+				requestHeaders.put(AUTH_HEADER_NAME, authHeader);
+			}
+		}
+		return requestHeaders;
+	}
+	
 	/**
 	 * 
 	 * @param url
-	 * @param response Will only be written to after status 200 is received,
+	 * @param response Will only be written to after a 2xx status is received,
 	 *  see {@link HttpStatusError#getResponse()} for error body.
 	 * @param requestHeaders Can be used for authentication, no BASIC authentication performed by this method 
 	 * @throws IOException
 	 * @throws HttpStatusError
 	 */
 	public void get(URL url, RestResponse restResponse, Map<String,String> requestHeaders) throws IOException, HttpStatusError {
+		RequestEvents events = RequestEvents.start(listener, METHOD_GET, url);
+		if (events == null) {
+			get(url, restResponse, requestHeaders, null);
+			return;
+		}
+		try {
+			get(url, restResponse, requestHeaders, events);
+			events.completed();
+		} catch (IOException e) {
+			events.failed(e);
+			throw e;
+		} catch (RuntimeException e) {
+			events.failed(e);
+			throw e;
+		}
+	}
+	
+	private void get(URL url, RestResponse restResponse, Map<String,String> requestHeaders, RequestEvents events) throws IOException, HttpStatusError {
 		HttpResponse<InputStream> response;
 		try {
-			HttpRequest.Builder builder = HttpRequest.newBuilder()
+			HttpRequest.Builder builder = newRequestBuilder()
 					.uri(url.toURI())
 					.GET();
+			BodyDeadline deadline = getBodyDeadline(restResponse, builder);
 
 			for (String h : requestHeaders.keySet()) {
 				builder.header(h, requestHeaders.get(h));
 			}
+			boolean decode = acceptEncoding && isDecodable(restResponse);
+			if (decode && !requestHeaders.containsKey(ContentDecoding.ACCEPT_ENCODING_HEADER_NAME)) {
+				builder.header(ContentDecoding.ACCEPT_ENCODING_HEADER_NAME, ContentDecoding.ACCEPT_ENCODING);
+			}
 			
 			logger.debug("GET connection to: {}", url);
-			response = clientRedirectNormal.send(builder.build(), BodyHandlers.ofInputStream());
+			response = clientRedirectNormal.send(builder.build(), withEvents(getBodyHandler(restResponse, events, deadline), events));
 			
 			// response should be ok regardless of status
-			ResponseHeaders headers = new ResponseHeadersJavaHttp(response);
+			ResponseHeaders headers;
+			ResponseHeadersJavaHttpDecoded decoded = null;
+			String contentEncoding = decode ? getContentEncodingDecoded(response.headers()) : null;
+			if (contentEncoding != null) {
+				headers = decoded = new ResponseHeadersJavaHttpDecoded(response, contentEncoding);
+			} else {
+				headers = new ResponseHeadersJavaHttp(response);
+			}
 			int responseCode = response.statusCode();
 		
 			// NOTE these comments are from original JavaNet implementation (before Java 11 http
 			// check status code before trying to get response body
 			// to avoid the unclassified IOException
-			// Currently getting body only for 200 OK. 
-			// There might be more 2xx responses with a valuable body.
-			if (responseCode == HttpURLConnection.HTTP_OK) {
+			// Body is streamed for all 2xx, for example 206 Partial Content and 203.
+			if (isSuccess(responseCode)) {
+				if (response.body() == null) {
+					// Body already written to the channel when send returned.
+					return;
+				}
 				OutputStream receiver = restResponse.getResponseStream(headers);
 				try {
 					InputStream body = response.body();
-					pipe(body, receiver);
+					long bytes = pipe(body, receiver, decoded);
 					body.close();
+					if (events != null) {
+						events.addBytes(bytes);
+					}
 					// Should NOT close the receiver, must be handled by calling class.
 					// See HttpClient BasicHttpEntity.writeTo(..) for consistency btw http clients.
 					//receiver.close();
@@ -186,32 +412,18 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 			} else if (responseCode == HttpURLConnection.HTTP_MOVED_PERM || responseCode == HttpURLConnection.HTTP_MOVED_TEMP) {
 				// redirect within the same protocol will be handled transparently, typically ending up here when redirected btw http/https
 				logger.info("Server responded with redirect ({}): {}", responseCode, headers.get("Location"));
-				ByteArrayOutputStream b = new ByteArrayOutputStream();
-				try {
-					InputStream body = response.body();
-					if (body == null) {
-						logger.warn("Redirect did not contain a body.");
-					}
-					pipe(body, b);
-					body.close();
-				} catch (IOException e) {
-					throw check(e);
+				InputStream body = response.body();
+				if (body == null) {
+					logger.warn("Redirect did not contain a body.");
 				}
-				throw new HttpStatusError(url.toString(), headers, b.toString());
+				throw readError(url, headers, body, decoded, events);
 				
 			} else { // Error stream expected for 4xx and 5xx.
-				ByteArrayOutputStream b = new ByteArrayOutputStream();
-				try {
-					InputStream body = response.body();
-					if (body == null) {
-						throw new RuntimeException("Response error could not be read for status " + responseCode);
-					}
-					pipe(body, b);
-					body.close();
-				} catch (IOException e) {
-					throw check(e);
+				InputStream body = response.body();
+				if (body == null) {
+					throw new RuntimeException("Response error could not be read for status " + responseCode);
 				}
-				throw new HttpStatusError(url.toString(), headers, b.toString());
+				throw readError(url, headers, body, decoded, events);
 			} 
 			
 			
@@ -228,11 +440,164 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 	}
 
 	
-	private static void setAuthHeaderBasic(Map<String, String> requestHeaders, String username, String password) {
-		
-		requestHeaders.put(AUTH_HEADER_NAME,
-				AUTH_HEADER_PREFIX + Codecs.base64encode(
-						username + ":" + password));
+	/**
+	 * @return handler that writes the body of a 2xx response directly to a {@link RestResponseChannel}
+	 *  or publishes it to a {@link RestResponsePublisher}, otherwise a stream that is read after status has been checked
+	 */
+	private BodyHandler<InputStream> getBodyHandler(RestResponse restResponse, final RequestEvents events, final BodyDeadline deadline) {
+		if (!(restResponse instanceof RestResponseChannel || restResponse instanceof RestResponsePublisher)) {
+			if (deadline != null) {
+				return info -> new BodySubscriberInputStream(deadline);
+			}
+			return BodyHandlers.ofInputStream();
+		}
+		return info -> {
+			// Never decoded, see isDecodable
+			if (isSuccess(info.statusCode())) {
+				return BodySubscribers.mapping(getBodySubscriber(restResponse, info, events, deadline), v -> (InputStream) null);
+			}
+			if (deadline != null) {
+				return new BodySubscriberInputStream(deadline);
+			}
+			return BodySubscribers.ofInputStream();
+		};
+	}
+	
+	/**
+	 * Ranges apply to the encoded body so they can not be combined with decoding.
+	 * Channel and publisher responses receive the buffers from the HttpClient as they are,
+	 * so compression is not negotiated for them.
+	 * @return true if compression may be negotiated with {@link #setAcceptEncoding(boolean)}
+	 */
+	private static boolean isDecodable(RestResponse restResponse) {
+		return !(restResponse instanceof RestResponseRange
+				|| restResponse instanceof RestResponseChannel
+				|| restResponse instanceof RestResponsePublisher);
+	}
+	
+	/**
+	 * @return subscriber that passes the body on to a {@link RestResponseChannel} or {@link RestResponsePublisher}
+	 */
+	private static BodySubscriber<Void> getBodySubscriber(RestResponse restResponse, ResponseInfo info, RequestEvents events, BodyDeadline deadline) {
+		ResponseHeaders headers = new ResponseHeadersJavaHttp(info);
+		if (restResponse instanceof RestResponsePublisher) {
+			BodySubscriberPublisher publisher = new BodySubscriberPublisher(events, deadline);
+			((RestResponsePublisher) restResponse).onResponseBody(headers, publisher);
+			return publisher;
+		}
+		WritableByteChannel receiver = ((RestResponseChannel) restResponse).getResponseChannel(headers);
+		return new BodySubscriberChannel(receiver, events, deadline);
+	}
+	
+	/**
+	 * Sets the per-request timeout on the builder if the response has one.
+	 * @return the deadline for receiving the body, null if there is none
+	 */
+	private BodyDeadline getBodyDeadline(RestResponse restResponse, HttpRequest.Builder builder) {
+		if (restResponse instanceof RestResponseTimeout) {
+			Duration timeout = ((RestResponseTimeout) restResponse).getTimeout();
+			if (timeout != null) {
+				builder.timeout(timeout);
+				return BodyDeadline.after(timeout);
+			}
+		}
+		return BodyDeadline.after(bodyTimeout);
+	}
+	
+	/**
+	 * @return true if the body should be written to the response, i.e. any 2xx status such as 206 for range requests
+	 */
+	private static boolean isSuccess(int status) {
+		return status >= HttpURLConnection.HTTP_OK && status < HttpURLConnection.HTTP_MULT_CHOICE;
+	}
+	
+	/**
+	 * @return the Content-Encoding to decode, null if the client did not ask for compression or the body is not encoded
+	 */
+	private String getContentEncodingDecoded(HttpHeaders headers) {
+		if (!acceptEncoding) {
+			return null;
+		}
+		String contentEncoding = headers.firstValue(ContentDecoding.CONTENT_ENCODING_HEADER_NAME).orElse(null);
+		if (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding)) {
+			return null;
+		}
+		if (!ContentDecoding.isSupported(contentEncoding)) {
+			logger.warn("Unsupported Content-Encoding {}, passing the body on encoded", contentEncoding);
+			return null;
+		}
+		return contentEncoding;
+	}
+	
+	/**
+	 * @return the handler, notifying events when headers are received unless events is null
+	 */
+	private static <T> BodyHandler<T> withEvents(final BodyHandler<T> handler, final RequestEvents events) {
+		if (events == null) {
+			return handler;
+		}
+		return info -> {
+			events.headers(info.statusCode());
+			return handler.apply(info);
+		};
+	}
+	
+	/**
+	 * @return the Authorization header value, computed once until {@link #refreshAuthentication()}, null if no username
+	 */
+	private String getAuthHeaderBasic() {
+		if (auth == null) {
+			return null;
+		}
+		AuthHeader current = authHeaderBasic.get();
+		String header = current.value;
+		if (header == null) {
+			// Concurrent first requests may compute it more than once.
+			// A refresh during computation replaces the instance, so the stale value is not kept.
+			String username = auth.getUsername(null, null, null);
+			if (username == null) {
+				header = "";
+			} else {
+				logger.debug("Authenticating user {}, forced", username);
+				header = AUTH_HEADER_PREFIX + Codecs.base64encode(
+						username + ":" + auth.getPassword(null, null, null, username));
+			}
+			authHeaderBasic.compareAndSet(current, new AuthHeader(header));
+		}
+		return header.isEmpty() ? null : header;
+	}
+	
+	/**
+	 * Forced authentication reads credentials once and reuses them for all requests,
+	 * call this method after credentials have changed, for example at rotation.
+	 */
+	public void refreshAuthentication() {
+		authHeaderBasic.set(new AuthHeader(null));
+	}
+	
+	public boolean isAcceptEncoding() {
+		return acceptEncoding;
+	}
+	
+	/**
+	 * Makes {@link #get(URL, RestResponse)} ask for gzip or deflate compressed bodies and decompress them
+	 * while streaming to the response, which gets {@link ResponseHeadersDecoded} headers.
+	 * Off by default. Async requests are not affected, nor are range, channel and publisher responses.
+	 * @param acceptEncoding true to send Accept-Encoding
+	 */
+	public void setAcceptEncoding(boolean acceptEncoding) {
+		this.acceptEncoding = acceptEncoding;
+	}
+	
+	/**
+	 * @param listener notified about every GET and HEAD request, null (default) for no instrumentation
+	 */
+	public void setRequestListener(RestRequestListener listener) {
+		this.listener = listener;
+	}
+	
+	public RestRequestListener getRequestListener() {
+		return listener;
 	}
 	
 	public boolean isAuthenticationForced() {
@@ -249,6 +614,7 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 			throw new IllegalArgumentException("Authentication forced assumes an authentication instance is provided.");
 		}
 		this.authenticationForced = authenticationForced;
+		refreshAuthentication();
 	}
 	
 
@@ -263,19 +629,65 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 			// Java 11 HttpClient wraps ConnectExceptions like crazy.
 			if (c instanceof ConnectException && c.getCause() != null) {
 				c = c.getCause();
-				
-				// Java 11 HttpClient throws UnresolvedAddressException (null message) instead of UnknownHostException with the hostname.
-				if (c instanceof UnresolvedAddressException) {
-					return new UnknownHostException(getHost());
-				}
+			}
+			// Java 11 HttpClient throws UnresolvedAddressException (null message) instead of UnknownHostException with the hostname.
+			// Wrapped once by sendAsync, twice by send.
+			if (c instanceof UnresolvedAddressException) {
+				return new UnknownHostException(getHost());
 			}
 		}
 		return e;
 	}
 
 	
-	private void pipe(InputStream source, OutputStream destination) throws IOException {
-		source.transferTo(destination);
+	private long pipe(InputStream source, OutputStream destination) throws IOException {
+		return source.transferTo(destination);
+	}
+	
+	/**
+	 * Reads the start of an error body, up to the max error body size, then closes the body to discard the rest.
+	 * @param decoded null if the body is not encoded
+	 * @return the error to throw
+	 */
+	private HttpStatusError readError(URL url, ResponseHeaders headers, InputStream body, ResponseHeadersJavaHttpDecoded decoded, RequestEvents events) throws IOException {
+		ErrorBody b;
+		try {
+			InputStream in = decoded == null ? body : ContentDecoding.decode(decoded.getContentEncoding(), body);
+			try {
+				b = ErrorBody.read(in, maxErrorBody);
+			} finally {
+				in.close();
+				body.close();
+			}
+		} catch (IOException e) {
+			throw check(e);
+		}
+		if (events != null) {
+			events.addBytes(b.size());
+		}
+		if (b.isTruncated()) {
+			logger.debug("Error body from {} truncated at {} bytes", url, maxErrorBody);
+		}
+		return new HttpStatusError(url.toString(), headers, b.toByteArray(), b.isTruncated());
+	}
+	
+	/**
+	 * @param decoded null if the source should be passed on as is
+	 * @return number of bytes written to the destination, decoded
+	 */
+	private long pipe(InputStream source, OutputStream destination, ResponseHeadersJavaHttpDecoded decoded) throws IOException {
+		if (decoded == null) {
+			return pipe(source, destination);
+		}
+		ContentDecoding.CountingInputStream encoded = new ContentDecoding.CountingInputStream(source);
+		InputStream in = ContentDecoding.decode(decoded.getContentEncoding(), encoded);
+		try {
+			long length = pipe(in, destination);
+			decoded.setLengths(encoded.getCount(), length);
+			return length;
+		} finally {
+			in.close();
+		}
 	}
 	
 
@@ -284,14 +696,53 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 	 */
 	@Override
 	public ResponseHeaders head(URL url) throws IOException {	
+		return head(url, (Duration) null);
+	}
+	
+	/**
+	 * @param uri resource from server root
+	 * @param timeout for this request, null for the client's default
+	 */
+	public ResponseHeaders head(String uri, Duration timeout) throws IOException {
+		if (!uri.startsWith("/")) {
+			throw new IllegalArgumentException("URIs must be relative to server root starting with slash. Got " + uri);
+		}
+		return head(getUrl(uri), timeout);
+	}
+	
+	/**
+	 * @param timeout for this request, null for the client's default
+	 */
+	public ResponseHeaders head(URL url, Duration timeout) throws IOException {
+		RequestEvents events = RequestEvents.start(listener, METHOD_HEAD, url);
+		if (events == null) {
+			return head(url, timeout, null);
+		}
+		try {
+			ResponseHeaders head = head(url, timeout, events);
+			events.completed();
+			return head;
+		} catch (IOException e) {
+			events.failed(e);
+			throw e;
+		} catch (RuntimeException e) {
+			events.failed(e);
+			throw e;
+		}
+	}
+	
+	private ResponseHeaders head(URL url, Duration timeout, RequestEvents events) throws IOException {
 		try {
-			HttpRequest.Builder builder = HttpRequest.newBuilder()
+			HttpRequest.Builder builder = newRequestBuilder()
 					.uri(url.toURI())
 					.method("HEAD", HttpRequest.BodyPublishers.noBody());
+			if (timeout != null) {
+				builder.timeout(timeout);
+			}
 
 			ResponseHeaders head = null;
 			logger.debug("attempting HEAD request with java http client: {}", url);
-			HttpResponse<Void> response = clientRedirectNever.send(builder.build(), BodyHandlers.discarding());
+			HttpResponse<Void> response = clientRedirectNever.send(builder.build(), withEvents(BodyHandlers.discarding(), events));
 			
 			logger.trace("HEAD {} connection done", url);
 			head = new ResponseHeadersJavaHttp(response);
@@ -308,12 +759,178 @@ public class RestClientJavaHttp extends RestClientUrlBase {
 		}
 	}
 	
-	private boolean isAuthBasic() {
+	@Override
+	public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+		if (!uri.startsWith("/")) {
+			throw new IllegalArgumentException("URIs must be relative to server root starting with slash. Got " + uri);
+		}
+		try {
+			return getAsync(getUrl(uri), response);
+		} catch (MalformedURLException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * Async variant of {@link #get(URL, RestResponse)}, performs BASIC authentication if RestAuthentication has username.
+	 */
+	public CompletableFuture<Void> getAsync(URL url, RestResponse response) {
+		return getAsync(url, response, getRequestHeaders(response));
+	}
+	
+	/**
+	 * Async variant of {@link #get(URL, RestResponse, Map)}.
+	 * 
+	 * The body is written to the response stream from the HttpClient's executor, without buffering,
+	 * as it arrives from the network.
+	 * 
+	 * @param url
+	 * @param restResponse Will only be written to after a 2xx status is received,
+	 *  see {@link HttpStatusError#getResponse()} for error body.
+	 * @param requestHeaders Can be used for authentication, no BASIC authentication performed by this method
+	 * @return completed exceptionally with {@link HttpStatusError} or IOException as cause 
+	 */
+	public CompletableFuture<Void> getAsync(URL url, RestResponse restResponse, Map<String,String> requestHeaders) {
+		HttpRequest.Builder builder = newRequestBuilder()
+				.uri(toURI(url))
+				.GET();
+		
+		for (String h : requestHeaders.keySet()) {
+			builder.header(h, requestHeaders.get(h));
+		}
+		final BodyDeadline deadline = getBodyDeadline(restResponse, builder);
+		
+		final RequestEvents events = RequestEvents.start(listener, METHOD_GET, url);
+		logger.debug("GET async connection to: {}", url);
+		CompletableFuture<HttpResponse<byte[]>> sent = clientRedirectNormal.sendAsync(builder.build(), withEvents(info -> {
+			// Same status handling as the blocking get, the response stream is only requested for 2xx.
+			if (isSuccess(info.statusCode())) {
+				if (restResponse instanceof RestResponseChannel || restResponse instanceof RestResponsePublisher) {
+					return BodySubscribers.mapping(getBodySubscriber(restResponse, info, events, deadline), v -> (byte[]) null);
+				}
+				OutputStream receiver = restResponse.getResponseStream(new ResponseHeadersJavaHttp(info));
+				return BodySubscribers.mapping(new BodySubscriberOutputStream(receiver, events, deadline), v -> (byte[]) null);
+			}
+			// Error bytes are counted when the error is reported.
+			// One byte more than the max is kept to detect truncation, the rest is discarded.
+			ErrorBody error = new ErrorBody(maxErrorBody + 1);
+			return BodySubscribers.mapping(new BodySubscriberOutputStream(error, null, deadline), v -> error.toByteArray());
+		}, events));
+		return cancelling(sent, sent.handle((response, e) -> {
+			if (e != null) {
+				Throwable failure = check(e);
+				if (events != null) {
+					events.failed(failure);
+				}
+				throw new CompletionException(failure);
+			}
+			int responseCode = response.statusCode();
+			if (isSuccess(responseCode)) {
+				if (events != null) {
+					events.completed();
+				}
+				return null;
+			}
+			ResponseHeaders headers = new ResponseHeadersJavaHttp(response);
+			if (responseCode == HttpURLConnection.HTTP_MOVED_PERM || responseCode == HttpURLConnection.HTTP_MOVED_TEMP) {
+				logger.info("Server responded with redirect ({}): {}", responseCode, headers.get("Location"));
+			}
+			byte[] body = response.body();
+			boolean truncated = body.length > maxErrorBody;
+			HttpStatusError error = new HttpStatusError(url.toString(), headers,
+					truncated ? Arrays.copyOf(body, maxErrorBody) : body, truncated);
+			if (events != null) {
+				events.addBytes(body.length);
+				events.failed(error);
+			}
+			throw new CompletionException(error);
+		}));
+	}
+	
+	@Override
+	public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+		if (!uri.startsWith("/")) {
+			throw new IllegalArgumentException("URIs must be relative to server root starting with slash");
+		}
+		try {
+			return headAsync(getUrl(uri));
+		} catch (MalformedURLException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * Async variant of {@link #head(URL)}.
+	 */
+	public CompletableFuture<ResponseHeaders> headAsync(URL url) {
+		HttpRequest.Builder builder = newRequestBuilder()
+				.uri(toURI(url))
+				.method("HEAD", HttpRequest.BodyPublishers.noBody());
+		
+		final RequestEvents events = RequestEvents.start(listener, METHOD_HEAD, url);
+		logger.debug("attempting async HEAD request with java http client: {}", url);
+		CompletableFuture<HttpResponse<Void>> sent = clientRedirectNever.sendAsync(builder.build(), withEvents(BodyHandlers.discarding(), events));
+		return cancelling(sent, sent.handle((response, e) -> {
+			if (e != null) {
+				Throwable failure = check(e);
+				if (events != null) {
+					events.failed(failure);
+				}
+				throw new CompletionException(failure);
+			}
+			if (events != null) {
+				events.completed();
+			}
+			// Intentionally not checking the status code.
+			return new ResponseHeadersJavaHttp(response);
+		}));
+	}
+	
+	/**
+	 * Cancelling the returned future aborts the exchange, on Java versions where HttpClient supports it.
+	 */
+	private static <T> CompletableFuture<T> cancelling(CompletableFuture<?> sent, CompletableFuture<T> result) {
+		result.whenComplete((v, e) -> {
+			if (result.isCancelled()) {
+				sent.cancel(true);
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Unwraps failures from the async HttpClient API and applies {@link #check(IOException)}.
+	 */
+	private Throwable check(Throwable e) {
+		Throwable c = e;
+		if (c instanceof CompletionException && c.getCause() != null) {
+			c = c.getCause();
+		}
+		if (c instanceof IOException) {
+			return check((IOException) c);
+		}
+		return c;
+	}
+	
+	private URI toURI(URL url) {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			throw new RuntimeException("Non-HTTP protocols not supported. Got URL: " + url);
+		}
+	}
+	
+	/**
+	 * Cached Authorization header, compared by identity so that a refresh always wins over a computation in progress.
+	 */
+	private static class AuthHeader {
 		
-		if (auth != null && auth.getUsername(null, null, null) != null) {
-			return true;
+		private final String value;
+		
+		AuthHeader(String value) {
+			this.value = value;
 		}
-		return false;
+		
 	}
 	
 }
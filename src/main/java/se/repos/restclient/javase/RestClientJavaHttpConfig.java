@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Settings for the HttpClient instances of {@link RestClientJavaHttp}, read when the client is constructed.
+ * 
+ * The default instance gives the same behavior as before this class existed, i.e. JDK defaults
+ * except the connect timeout, which is what the injected constructor uses.
+ * To inject a client with other settings, provide it with the constructor that takes a config.
+ * 
+ * Pool size and keep-alive timeout are JVM wide system properties in java.net.http,
+ * read once when the first HttpClient in the JVM is created, so they are not per-instance settings.
+ * Set them with -D options or {@link #setPoolProperties(int, Duration)} at application startup.
+ */
+public class RestClientJavaHttpConfig {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientJavaHttpConfig.class);
+
+	/**
+	 * The java.net.http system property for the maximum number of idle connections per client.
+	 */
+	public static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+	
+	/**
+	 * The java.net.http system property for idle connection timeout in seconds.
+	 */
+	public static final String KEEPALIVE_TIMEOUT_PROPERTY = "jdk.httpclient.keepalive.timeout";
+	
+	private HttpClient.Version version = null;
+	private Duration connectTimeout = Duration.ofMillis(RestClientJavaHttp.DEFAULT_CONNECT_TIMEOUT);
+	private Duration requestTimeout = null;
+	private Duration bodyTimeout = null;
+	private boolean virtualThreads = false;
+	private int maxErrorBody = RestClientJavaHttp.DEFAULT_MAX_ERROR_BODY;
+	
+	public HttpClient.Version getVersion() {
+		return version;
+	}
+	
+	/**
+	 * HTTP/2 is negotiated with ALPN over https. For http the JDK client upgrades from HTTP/1.1,
+	 * there is no prior knowledge mode, so use HTTP_1_1 to avoid the upgrade attempt.
+	 * @param version preferred version, null (default) for the JDK default which is HTTP/2 if supported
+	 */
+	public void setVersion(HttpClient.Version version) {
+		this.version = version;
+	}
+	
+	public Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+	
+	/**
+	 * @param connectTimeout default {@value RestClientJavaHttp#DEFAULT_CONNECT_TIMEOUT} ms, null for no timeout
+	 */
+	public void setConnectTimeout(Duration connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+	
+	public Duration getRequestTimeout() {
+		return requestTimeout;
+	}
+	
+	/**
+	 * @param requestTimeout time until response headers are received, null (default) for no timeout
+	 */
+	public void setRequestTimeout(Duration requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+	
+	public Duration getBodyTimeout() {
+		return bodyTimeout;
+	}
+	
+	/**
+	 * @param bodyTimeout time from the start of a GET until the body has been received, null (default) for no limit,
+	 *  see also {@link se.repos.restclient.RestResponseTimeout} for per-request limits
+	 */
+	public void setBodyTimeout(Duration bodyTimeout) {
+		this.bodyTimeout = bodyTimeout;
+	}
+	
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * @param virtualThreads see {@link RestClientJavaHttp#RestClientJavaHttp(String, se.repos.restclient.RestAuthentication, boolean)}
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	public int getMaxErrorBody() {
+		return maxErrorBody;
+	}
+	
+	/**
+	 * @param maxErrorBody bytes of an error response body kept in {@link se.repos.restclient.HttpStatusError},
+	 *  default {@value RestClientJavaHttp#DEFAULT_MAX_ERROR_BODY}, the rest is discarded
+	 */
+	public void setMaxErrorBody(int maxErrorBody) {
+		if (maxErrorBody < 0) {
+			throw new IllegalArgumentException("Max error body must not be negative, got " + maxErrorBody);
+		}
+		this.maxErrorBody = maxErrorBody;
+	}
+	
+	/**
+	 * Sets the JVM wide connection pool properties, affecting every HttpClient in the JVM, not only RestClientJavaHttp.
+	 * 
+	 * Must be called before the first HttpClient is created, typically at application startup.
+	 * Properties that are already set, for example with -D options, are not changed.
+	 * Logs a warning if a RestClientJavaHttp has already been created in this JVM, but can not detect
+	 * HttpClient instances created by other code.
+	 * 
+	 * @param poolSize maximum idle connections kept per HttpClient, 0 for the JDK default which is unlimited
+	 * @param keepAliveTimeout how long an idle connection is kept, whole seconds, null for the JDK default
+	 * @return true if all values are in effect, as far as we can tell
+	 */
+	public static boolean setPoolProperties(int poolSize, Duration keepAliveTimeout) {
+		if (poolSize < 0) {
+			throw new IllegalArgumentException("Pool size must not be negative, got " + poolSize);
+		}
+		boolean applied = true;
+		if (poolSize > 0) {
+			applied &= setIfAbsent(POOL_SIZE_PROPERTY, Integer.toString(poolSize));
+		}
+		if (keepAliveTimeout != null) {
+			applied &= setIfAbsent(KEEPALIVE_TIMEOUT_PROPERTY, Long.toString(Math.max(1, keepAliveTimeout.getSeconds())));
+		}
+		if (!applied) {
+			logger.warn("HttpClient pool settings overridden by system properties {}={} {}={}",
+					POOL_SIZE_PROPERTY, System.getProperty(POOL_SIZE_PROPERTY),
+					KEEPALIVE_TIMEOUT_PROPERTY, System.getProperty(KEEPALIVE_TIMEOUT_PROPERTY));
+		}
+		if (RestClientJavaHttp.isClientCreated()) {
+			logger.warn("HttpClient pool settings applied after an HttpClient was created, they will not take effect");
+			applied = false;
+		}
+		return applied;
+	}
+	
+	private static boolean setIfAbsent(String property, String value) {
+		String existing = System.getProperty(property);
+		if (existing == null) {
+			System.setProperty(property, value);
+			return true;
+		}
+		return existing.equals(value);
+	}
+	
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.metrics;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import se.repos.restclient.RestRequestListener;
+
+/**
+ * In-memory request metrics, per HTTP method, for scraping.
+ * 
+ * Keeps time to first byte and total time histograms, transferred bytes,
+ * counts per status class (2xx, 3xx, 4xx, 5xx) and failures per exception type.
+ * Additional values, for example pool or breaker state, can be added as gauges.
+ */
+public class RestMetricsRecorder implements RestRequestListener {
+
+	private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+	private final ConcurrentHashMap<String, LongAdder> exceptions = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+	
+	@Override
+	public void requestStarted(String method, URL url) {
+		getMethod(method).started.increment();
+	}
+	
+	@Override
+	public void headersReceived(String method, URL url, int status, long nanos) {
+		getMethod(method).firstByte.record(nanos);
+	}
+	
+	@Override
+	public void requestCompleted(String method, URL url, int status, long bytes, long nanos) {
+		MethodMetrics m = getMethod(method);
+		m.total.record(nanos);
+		m.bytes.add(bytes);
+		m.status(status).increment();
+	}
+	
+	@Override
+	public void requestFailed(String method, URL url, int status, Throwable error, long nanos) {
+		MethodMetrics m = getMethod(method);
+		m.total.record(nanos);
+		m.failed.increment();
+		if (status > 0) {
+			m.status(status).increment();
+		}
+		exceptions.computeIfAbsent(error.getClass().getName(), k -> new LongAdder()).increment();
+	}
+	
+	/**
+	 * @param method GET or HEAD
+	 * @return time from start until headers were received, in nanoseconds
+	 */
+	public LatencyHistogram getFirstByteHistogram(String method) {
+		return getMethod(method).firstByte;
+	}
+	
+	/**
+	 * @param method GET or HEAD
+	 * @return time from start until completed or failed, in nanoseconds
+	 */
+	public LatencyHistogram getTotalHistogram(String method) {
+		return getMethod(method).total;
+	}
+	
+	public long getBytes(String method) {
+		return getMethod(method).bytes.sum();
+	}
+	
+	/**
+	 * @param statusClass 2 for 2xx etc
+	 */
+	public long getStatusCount(String method, int statusClass) {
+		return getMethod(method).statusClasses[statusClass].sum();
+	}
+	
+	/**
+	 * @param exceptionClass for example java.net.UnknownHostException
+	 */
+	public long getExceptionCount(String exceptionClass) {
+		LongAdder count = exceptions.get(exceptionClass);
+		return count == null ? 0 : count.sum();
+	}
+	
+	/**
+	 * @param name included in {@link #snapshot()}, replaces any existing gauge with the same name
+	 * @param gauge called at snapshot, must be thread safe
+	 */
+	public void registerGauge(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+	
+	/**
+	 * @return current values as flat names like "GET.ttfb.p99", times in nanoseconds, sorted by name
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> s = new TreeMap<String, Long>();
+		for (Map.Entry<String, MethodMetrics> e : methods.entrySet()) {
+			String p = e.getKey() + '.';
+			MethodMetrics m = e.getValue();
+			s.put(p + "started", m.started.sum());
+			s.put(p + "failed", m.failed.sum());
+			s.put(p + "bytes", m.bytes.sum());
+			for (int i = 1; i < m.statusClasses.length; i++) {
+				s.put(p + "status." + i + "xx", m.statusClasses[i].sum());
+			}
+			put(s, p + "ttfb", m.firstByte);
+			put(s, p + "total", m.total);
+		}
+		for (Map.Entry<String, LongAdder> e : exceptions.entrySet()) {
+			s.put("exception." + e.getKey(), e.getValue().sum());
+		}
+		for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+			s.put(e.getKey(), e.getValue().getAsLong());
+		}
+		return s;
+	}
+	
+	private static void put(Map<String, Long> s, String prefix, LatencyHistogram h) {
+		s.put(prefix + ".count", h.getCount());
+		s.put(prefix + ".p50", h.getPercentile(50));
+		s.put(prefix + ".p90", h.getPercentile(90));
+		s.put(prefix + ".p99", h.getPercentile(99));
+		s.put(prefix + ".max", h.getMax());
+	}
+	
+	private MethodMetrics getMethod(String method) {
+		MethodMetrics m = methods.get(method);
+		if (m == null) {
+			m = methods.computeIfAbsent(method, k -> new MethodMetrics());
+		}
+		return m;
+	}
+	
+	private static class MethodMetrics {
+		
+		private final LongAdder started = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LatencyHistogram firstByte = new LatencyHistogram();
+		private final LatencyHistogram total = new LatencyHistogram();
+		// Index is status / 100, 0 for anything outside 100-599
+		private final LongAdder[] statusClasses = new LongAdder[6];
+		
+		MethodMetrics() {
+			for (int i = 0; i < statusClasses.length; i++) {
+				statusClasses[i] = new LongAdder();
+			}
+		}
+		
+		LongAdder status(int status) {
+			int c = status / 100;
+			return statusClasses[c > 0 && c < statusClasses.length ? c : 0];
+		}
+		
+	}
+	
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive limit on requests in flight, using additive increase and multiplicative decrease (AIMD).
+ * 
+ * The limit grows by about one for every limit's worth of successful requests while the limit is in use,
+ * and is reduced by a ratio when a request is dropped by the server or takes longer than the latency threshold.
+ */
+public class ConcurrencyLimiter {
+
+	/**
+	 * Default: {@value #DEFAULT_BACKOFF_RATIO}.
+	 */
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private long latencyNanos = Long.MAX_VALUE;
+	
+	// Guarded by this
+	private double limit;
+	private int inFlight = 0;
+	
+	/**
+	 * @param initialLimit starting limit
+	 * @param minLimit lowest limit after decrease, at least 1
+	 * @param maxLimit highest limit after increase
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Invalid concurrency limits " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+	
+	/**
+	 * @param latencyMillis requests that take longer than this decrease the limit, like dropped requests
+	 */
+	public void setLatencyThreshold(long latencyMillis) {
+		this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+	}
+	
+	/**
+	 * @param backoffRatio factor, below 1, applied to the limit on drops
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+	}
+	
+	/**
+	 * @return true if a slot was taken, then {@link #release(long, boolean)} or {@link #release()} must be called
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+	
+	/**
+	 * Waits for a slot.
+	 * @param timeoutNanos maximum time to wait, Long.MAX_VALUE for no limit
+	 * @return true if a slot was taken, false on timeout
+	 */
+	public synchronized boolean acquire(long timeoutNanos) throws InterruptedException {
+		long start = System.nanoTime();
+		while (inFlight >= (int) limit) {
+			long remaining = timeoutNanos - (System.nanoTime() - start);
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		inFlight++;
+		return true;
+	}
+	
+	/**
+	 * Releases a slot after a completed request, adapting the limit.
+	 * @param nanos time the request took
+	 * @param dropped true if the server signaled overload, for example 503 or timeout
+	 */
+	public synchronized void release(long nanos, boolean dropped) {
+		if (dropped || nanos > latencyNanos) {
+			limit = Math.max(minLimit, limit * backoffRatio);
+		} else if (inFlight * 2 >= limit) {
+			// Only grow while the limit is actually used
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+		release();
+	}
+	
+	/**
+	 * Releases a slot without adapting the limit, for requests that were not made.
+	 */
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+	
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+	
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import java.util.function.BooleanSupplier;
+
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseAccept;
+import se.repos.restclient.RestResponseChannel;
+import se.repos.restclient.RestResponseConditional;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.RestResponseRange;
+import se.repos.restclient.RestResponseTimeout;
+
+/**
+ * Passes the caller's Accept, conditional and timeout options on, null if the caller's response has none,
+ * and the body on to the caller's response if the body supplier allows it.
+ *
+ * Clients detect Range, Channel and Publisher with instanceof,
+ * so use {@link #forward(RestResponse, BooleanSupplier)} to get a response that has those of the caller's.
+ */
+class ForwardingResponse implements RestResponseAccept, RestResponseConditional, RestResponseTimeout {
+
+	final RestResponse target;
+	final BooleanSupplier body;
+
+	/**
+	 * @param target the caller's response
+	 * @param body called when the body arrives, true to pass it on, false to make the request fail or end
+	 * @return response to pass to the client
+	 */
+	static RestResponse forward(RestResponse target, BooleanSupplier body) {
+		boolean range = target instanceof RestResponseRange;
+		if (target instanceof RestResponsePublisher) {
+			return range ? new RangePublisher(target, body) : new Publisher(target, body);
+		}
+		if (target instanceof RestResponseChannel) {
+			return range ? new RangeChannel(target, body) : new Channel(target, body);
+		}
+		return range ? new Range(target, body) : new ForwardingResponse(target, body);
+	}
+
+	ForwardingResponse(RestResponse target, BooleanSupplier body) {
+		this.target = target;
+		this.body = body;
+	}
+
+	@Override
+	public String getAccept() {
+		if (target instanceof RestResponseAccept) {
+			return ((RestResponseAccept) target).getAccept();
+		}
+		return null;
+	}
+
+	@Override
+	public String getIfNoneMatch() {
+		if (target instanceof RestResponseConditional) {
+			return ((RestResponseConditional) target).getIfNoneMatch();
+		}
+		return null;
+	}
+
+	@Override
+	public String getIfModifiedSince() {
+		if (target instanceof RestResponseConditional) {
+			return ((RestResponseConditional) target).getIfModifiedSince();
+		}
+		return null;
+	}
+
+	@Override
+	public Duration getTimeout() {
+		if (target instanceof RestResponseTimeout) {
+			return ((RestResponseTimeout) target).getTimeout();
+		}
+		return null;
+	}
+
+	@Override
+	public OutputStream getResponseStream(ResponseHeaders headers) {
+		if (body.getAsBoolean()) {
+			return target.getResponseStream(headers);
+		}
+		return new Rejected();
+	}
+
+	private static class Channel extends ForwardingResponse implements RestResponseChannel {
+
+		Channel(RestResponse target, BooleanSupplier body) {
+			super(target, body);
+		}
+
+		@Override
+		public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+			if (body.getAsBoolean()) {
+				return ((RestResponseChannel) target).getResponseChannel(headers);
+			}
+			return new Rejected();
+		}
+
+	}
+
+	private static class Publisher extends ForwardingResponse implements RestResponsePublisher {
+
+		Publisher(RestResponse target, BooleanSupplier body) {
+			super(target, body);
+		}
+
+		@Override
+		public void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> publisher) {
+			if (body.getAsBoolean()) {
+				((RestResponsePublisher) target).onResponseBody(headers, publisher);
+			} else {
+				publisher.subscribe(new Rejected());
+			}
+		}
+
+	}
+
+	/**
+	 * Range options of the caller's response.
+	 */
+	private interface Ranged extends RestResponseRange {
+
+		RestResponse getTarget();
+
+		@Override
+		default long getRangeStart() {
+			return ((RestResponseRange) getTarget()).getRangeStart();
+		}
+
+		@Override
+		default long getRangeEnd() {
+			return ((RestResponseRange) getTarget()).getRangeEnd();
+		}
+
+		@Override
+		default String getIfRange() {
+			return ((RestResponseRange) getTarget()).getIfRange();
+		}
+
+	}
+
+	private static class Range extends ForwardingResponse implements Ranged {
+
+		Range(RestResponse target, BooleanSupplier body) {
+			super(target, body);
+		}
+
+		@Override
+		public RestResponse getTarget() {
+			return target;
+		}
+
+	}
+
+	private static class RangeChannel extends Channel implements Ranged {
+
+		RangeChannel(RestResponse target, BooleanSupplier body) {
+			super(target, body);
+		}
+
+		@Override
+		public RestResponse getTarget() {
+			return target;
+		}
+
+	}
+
+	private static class RangePublisher extends Publisher implements Ranged {
+
+		RangePublisher(RestResponse target, BooleanSupplier body) {
+			super(target, body);
+		}
+
+		@Override
+		public RestResponse getTarget() {
+			return target;
+		}
+
+	}
+
+	/**
+	 * Makes the request fail when a rejected body arrives, or end it without reading the body.
+	 */
+	private static class Rejected extends OutputStream implements WritableByteChannel, Flow.Subscriber<Object> {
+
+		@Override
+		public void write(int b) throws IOException {
+			throw new IOException("Response body rejected");
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			throw new IOException("Response body rejected");
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			throw new IOException("Response body rejected");
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.cancel();
+		}
+
+		@Override
+		public void onNext(Object item) {
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the request rate, with bursts up to a capacity.
+ * Starts full.
+ */
+public class RateLimiter {
+
+	private final double nanosPerPermit;
+	private final double burst;
+	
+	// Guarded by this
+	private double tokens;
+	private long refilled;
+	
+	/**
+	 * @param permitsPerSecond sustained request rate
+	 * @param burst maximum number of requests that can be made at once after a quiet period, at least 1
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate must be positive, got " + permitsPerSecond);
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("Burst must be at least 1, got " + burst);
+		}
+		this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+		this.burst = burst;
+		this.tokens = burst;
+		this.refilled = System.nanoTime();
+	}
+	
+	/**
+	 * @return true if a permit was taken
+	 */
+	public synchronized boolean tryAcquire() {
+		refill();
+		if (tokens >= 1) {
+			tokens -= 1;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Waits for a permit.
+	 * @param timeoutNanos maximum time to wait, Long.MAX_VALUE for no limit
+	 * @return true if a permit was taken, false if it would not be available within the timeout
+	 */
+	public boolean acquire(long timeoutNanos) throws InterruptedException {
+		long start = System.nanoTime();
+		while (true) {
+			long wait;
+			synchronized (this) {
+				if (tryAcquire()) {
+					return true;
+				}
+				wait = getWaitNanos();
+			}
+			if (System.nanoTime() - start + wait > timeoutNanos) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+	
+	/**
+	 * @return time until a permit is available, 0 if available now
+	 */
+	public synchronized long getWaitNanos() {
+		refill();
+		return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerPermit);
+	}
+	
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - refilled) / nanosPerPermit);
+		refilled = now;
+	}
+	
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+
+/**
+ * Thrown without contacting the server when a client side limit does not allow the request.
+ */
+public class RequestRejectedException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RequestRejectedException(String message) {
+		super(message);
+	}
+	
+}
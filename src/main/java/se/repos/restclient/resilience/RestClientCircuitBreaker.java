@@ -0,0 +1,324 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.metrics.RestMetricsRecorder;
+
+/**
+ * Fails fast with {@link CircuitOpenException} while the server appears to be down,
+ * instead of letting every caller wait for timeouts.
+ * 
+ * Use one instance per server root, i.e. around each single host client.
+ * Outcomes of the latest requests are kept in a sliding window. When enough requests have been made
+ * and the rate of failures, or of slow requests, reaches its threshold the circuit opens.
+ * After the open duration a limited number of trial requests are let through (half-open);
+ * if they all succeed the circuit closes, if any fails it opens again.
+ * 
+ * Failures are IOExceptions except status errors below 500, and HEAD responses with status 500 or above.
+ */
+public class RestClientCircuitBreaker implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientCircuitBreaker.class);
+	
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+	
+	/**
+	 * Default: {@value #DEFAULT_WINDOW_SIZE} requests.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	
+	/**
+	 * Default: {@value #DEFAULT_MIN_REQUESTS} requests in the window before the circuit can open.
+	 */
+	public static final int DEFAULT_MIN_REQUESTS = 10;
+	
+	/**
+	 * Default: {@value #DEFAULT_FAILURE_RATE} percent.
+	 */
+	public static final int DEFAULT_FAILURE_RATE = 50;
+	
+	/**
+	 * Default: {@value #DEFAULT_SLOW_MILLIS} ms.
+	 */
+	public static final long DEFAULT_SLOW_MILLIS = 10000;
+	
+	/**
+	 * Default: {@value #DEFAULT_SLOW_RATE} percent, i.e. only if all requests in the window are slow.
+	 */
+	public static final int DEFAULT_SLOW_RATE = 100;
+	
+	/**
+	 * Default: {@value #DEFAULT_OPEN_MILLIS} ms.
+	 */
+	public static final long DEFAULT_OPEN_MILLIS = 30000;
+	
+	/**
+	 * Default: {@value #DEFAULT_HALF_OPEN_REQUESTS}.
+	 */
+	public static final int DEFAULT_HALF_OPEN_REQUESTS = 3;
+	
+	private final RestClient client;
+	private int minRequests = DEFAULT_MIN_REQUESTS;
+	private int failureRate = DEFAULT_FAILURE_RATE;
+	private long slowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_MILLIS);
+	private int slowRate = DEFAULT_SLOW_RATE;
+	private long openNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_MILLIS);
+	private int halfOpenRequests = DEFAULT_HALF_OPEN_REQUESTS;
+	
+	// Guarded by this
+	private final boolean[] windowFailed;
+	private final boolean[] windowSlow;
+	private int windowCount = 0;
+	private int windowNext = 0;
+	private int failed = 0;
+	private int slow = 0;
+	private long openedAt = 0;
+	private int halfOpenStarted = 0;
+	private int halfOpenSucceeded = 0;
+	// Incremented at every state change, so that requests started in an earlier state are not counted
+	private long generation = 0;
+	private volatile State state = State.CLOSED;
+	
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder opened = new LongAdder();
+	
+	public RestClientCircuitBreaker(RestClient client) {
+		this(client, DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * @param client the single host client to make requests with
+	 * @param windowSize number of latest requests that failure and slow rates are calculated from
+	 */
+	public RestClientCircuitBreaker(RestClient client, int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be at least 1, got " + windowSize);
+		}
+		this.client = client;
+		this.windowFailed = new boolean[windowSize];
+		this.windowSlow = new boolean[windowSize];
+	}
+	
+	/**
+	 * @param minRequests requests in the window before rates are evaluated
+	 * @param failureRate percent of failed requests in the window that opens the circuit
+	 */
+	public void setFailureThreshold(int minRequests, int failureRate) {
+		this.minRequests = minRequests;
+		this.failureRate = failureRate;
+	}
+	
+	/**
+	 * @param slowMillis requests that take longer than this, including failures, are slow
+	 * @param slowRate percent of slow requests in the window that opens the circuit, above 100 to disable
+	 */
+	public void setSlowThreshold(long slowMillis, int slowRate) {
+		this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+		this.slowRate = slowRate;
+	}
+	
+	/**
+	 * @param openMillis how long to fail fast before trial requests are let through
+	 * @param halfOpenRequests number of trial requests, all must succeed to close the circuit
+	 */
+	public void setOpenDuration(long openMillis, int halfOpenRequests) {
+		if (halfOpenRequests < 1) {
+			throw new IllegalArgumentException("At least one half-open request is required");
+		}
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.halfOpenRequests = halfOpenRequests;
+	}
+	
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		long permit = acquire(uri);
+		long start = System.nanoTime();
+		boolean failure = true;
+		try {
+			client.get(uri, response);
+			failure = false;
+		} catch (IOException e) {
+			failure = isFailure(e);
+			throw e;
+		} catch (RuntimeException e) {
+			// Typically from the caller's response stream, the server did respond
+			failure = false;
+			throw e;
+		} finally {
+			record(permit, failure, System.nanoTime() - start);
+		}
+	}
+	
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		long permit = acquire(uri);
+		long start = System.nanoTime();
+		boolean failure = true;
+		try {
+			ResponseHeaders head = client.head(uri);
+			failure = head.getStatus() >= 500;
+			return head;
+		} catch (IOException e) {
+			failure = isFailure(e);
+			throw e;
+		} finally {
+			record(permit, failure, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Makes post-processing possible.
+	 * @return true if the exception indicates that the server is unavailable
+	 */
+	protected boolean isFailure(IOException e) {
+		if (e instanceof HttpStatusError) {
+			return ((HttpStatusError) e).getHttpStatus() >= 500;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the generation that the outcome should be recorded for
+	 */
+	private long acquire(String uri) throws CircuitOpenException {
+		synchronized (this) {
+			if (state == State.OPEN) {
+				if (System.nanoTime() - openedAt < openNanos) {
+					rejected.increment();
+					throw new CircuitOpenException("Circuit breaker open, not requesting " + uri);
+				}
+				transition(State.HALF_OPEN);
+			}
+			if (state == State.HALF_OPEN) {
+				if (halfOpenStarted >= halfOpenRequests) {
+					rejected.increment();
+					throw new CircuitOpenException("Circuit breaker half-open, not requesting " + uri);
+				}
+				halfOpenStarted++;
+			}
+			return generation;
+		}
+	}
+	
+	private synchronized void record(long permit, boolean failure, long nanos) {
+		if (permit != generation) {
+			return;
+		}
+		boolean isSlow = nanos > slowNanos;
+		if (state == State.HALF_OPEN) {
+			if (failure || isSlow) {
+				transition(State.OPEN);
+			} else if (++halfOpenSucceeded >= halfOpenRequests) {
+				transition(State.CLOSED);
+			}
+			return;
+		}
+		if (windowCount == windowFailed.length) {
+			if (windowFailed[windowNext]) {
+				failed--;
+			}
+			if (windowSlow[windowNext]) {
+				slow--;
+			}
+		} else {
+			windowCount++;
+		}
+		windowFailed[windowNext] = failure;
+		windowSlow[windowNext] = isSlow;
+		windowNext = (windowNext + 1) % windowFailed.length;
+		if (failure) {
+			failed++;
+		}
+		if (isSlow) {
+			slow++;
+		}
+		if (windowCount >= minRequests
+				&& (failed * 100 >= failureRate * windowCount || slow * 100 >= slowRate * windowCount)) {
+			logger.warn("Circuit breaker opening after {} failed and {} slow of {} requests", failed, slow, windowCount);
+			transition(State.OPEN);
+		}
+	}
+	
+	private void transition(State to) {
+		logger.info("Circuit breaker {} -> {}", state, to);
+		generation++;
+		state = to;
+		windowCount = 0;
+		windowNext = 0;
+		failed = 0;
+		slow = 0;
+		halfOpenStarted = 0;
+		halfOpenSucceeded = 0;
+		if (to == State.OPEN) {
+			openedAt = System.nanoTime();
+			opened.increment();
+		}
+	}
+	
+	public State getState() {
+		return state;
+	}
+	
+	/**
+	 * @return percent failed requests in the current window, 0 if not closed
+	 */
+	public synchronized int getFailureRate() {
+		return windowCount == 0 ? 0 : failed * 100 / windowCount;
+	}
+	
+	/**
+	 * @return number of requests that failed fast
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+	
+	/**
+	 * @return number of times the circuit has opened
+	 */
+	public long getOpenedCount() {
+		return opened.sum();
+	}
+	
+	/**
+	 * Exposes state as gauges.
+	 * @param metrics to register with
+	 * @param prefix for example the server name, gauge names are prefix + ".breaker.state" etc
+	 */
+	public void registerMetrics(RestMetricsRecorder metrics, String prefix) {
+		String p = prefix + ".breaker.";
+		metrics.registerGauge(p + "state", () -> state.ordinal());
+		metrics.registerGauge(p + "failureRate", () -> getFailureRate());
+		metrics.registerGauge(p + "rejected", () -> getRejectedCount());
+		metrics.registerGauge(p + "opened", () -> getOpenedCount());
+	}
+	
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestAsyncClient;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.metrics.LatencyHistogram;
+import se.repos.restclient.metrics.RestMetricsRecorder;
+
+/**
+ * Reduces tail latency by sending a second identical GET or HEAD when the first is slow,
+ * using whichever responds first.
+ * 
+ * The delay is a percentile of time to response headers, so that only the slowest requests are hedged.
+ * For GET the first attempt to receive success headers gets the caller's response stream,
+ * the other attempt is cancelled and its body is rejected, never reaching the caller.
+ * A status error is also a response, and wins.
+ * If one attempt fails without response the other is awaited.
+ * 
+ * Hedges are limited by a {@link RetryBudget}, by default to 10% of requests.
+ * Only use with idempotent requests, i.e. servers where GET has no side effects.
+ */
+public class RestClientHedging implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientHedging.class);
+	
+	/**
+	 * Default: {@value #DEFAULT_PERCENTILE}.
+	 */
+	public static final double DEFAULT_PERCENTILE = 95;
+	
+	/**
+	 * Default: {@value #DEFAULT_MIN_DELAY_MILLIS} ms.
+	 */
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 10;
+	
+	/**
+	 * Default: {@value #DEFAULT_MIN_SAMPLES}, requests are not hedged until the percentile is meaningful.
+	 */
+	public static final long DEFAULT_MIN_SAMPLES = 20;
+	
+	private final RestAsyncClient client;
+	private final RetryBudget budget;
+	private LatencyHistogram latency = new LatencyHistogram();
+	private boolean recordLatency = true;
+	private double percentile = DEFAULT_PERCENTILE;
+	private long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_DELAY_MILLIS);
+	private long minSamples = DEFAULT_MIN_SAMPLES;
+	
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder hedged = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder budgetExhausted = new LongAdder();
+	
+	public RestClientHedging(RestAsyncClient client) {
+		this(client, new RetryBudget(0.1, RetryBudget.DEFAULT_CAPACITY));
+	}
+	
+	/**
+	 * @param client for example RestClientJavaHttp, requests must be cancellable to not waste the server's work
+	 * @param budget limits the number of hedged requests, may be shared
+	 */
+	public RestClientHedging(RestAsyncClient client, RetryBudget budget) {
+		this.client = client;
+		this.budget = budget;
+	}
+	
+	/**
+	 * @param percentile of time to headers after which a request is hedged, for example 95
+	 * @param minDelayMillis shortest hedge delay regardless of percentile
+	 */
+	public void setDelay(double percentile, long minDelayMillis) {
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+	}
+	
+	/**
+	 * @param minSamples requests recorded before hedging starts
+	 */
+	public void setMinSamples(long minSamples) {
+		this.minSamples = minSamples;
+	}
+	
+	/**
+	 * By default time to headers of the first attempt is recorded by this client.
+	 * 
+	 * @param latency an existing histogram in nanoseconds, typically
+	 *  {@link RestMetricsRecorder#getFirstByteHistogram(String)} for the wrapped client, not recorded to by this client
+	 */
+	public void setLatencyHistogram(LatencyHistogram latency) {
+		this.latency = latency;
+		this.recordLatency = false;
+	}
+	
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		new Race<Void>(uri, (race, i) -> client.getAsync(uri, ForwardingResponse.forward(response, new Attempt(race, i)))).await();
+	}
+	
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		return new Race<ResponseHeaders>(uri, (race, i) -> client.headAsync(uri)).await();
+	}
+	
+	/**
+	 * @return delay in nanoseconds before hedging, -1 to not hedge
+	 */
+	long getDelayNanos() {
+		if (latency.getCount() < minSamples) {
+			return -1;
+		}
+		return Math.max(minDelayNanos, latency.getPercentile(percentile));
+	}
+	
+	private static Throwable unwrap(Throwable e) {
+		while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e;
+	}
+	
+	/**
+	 * @return number of GET and HEAD calls
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+	
+	/**
+	 * @return number of second requests sent
+	 */
+	public long getHedgedCount() {
+		return hedged.sum();
+	}
+	
+	/**
+	 * @return number of second requests that responded first
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWins.sum();
+	}
+	
+	/**
+	 * @return number of slow requests that were not hedged because of the budget
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhausted.sum();
+	}
+	
+	/**
+	 * Exposes counters as gauges.
+	 * @param metrics to register with
+	 * @param prefix for example the server name, gauge names are prefix + ".hedge.sent" etc
+	 */
+	public void registerMetrics(RestMetricsRecorder metrics, String prefix) {
+		String p = prefix + ".hedge.";
+		metrics.registerGauge(p + "requests", () -> getRequestCount());
+		metrics.registerGauge(p + "sent", () -> getHedgedCount());
+		metrics.registerGauge(p + "wins", () -> getHedgeWinCount());
+		metrics.registerGauge(p + "budgetExhausted", () -> getBudgetExhaustedCount());
+		metrics.registerGauge(p + "delay", () -> getDelayNanos());
+	}
+	
+	/**
+	 * The first and, if slow, second attempt of one request.
+	 */
+	private class Race<T> {
+		
+		private final String uri;
+		private final BiFunction<Race<T>, Integer, CompletableFuture<T>> send;
+		private final long start = System.nanoTime();
+		private final AtomicInteger winner = new AtomicInteger(-1);
+		private final AtomicBoolean recorded = new AtomicBoolean(false);
+		private final CompletableFuture<T> done = new CompletableFuture<T>();
+		// Guarded by this
+		private final List<CompletableFuture<T>> attempts = new ArrayList<CompletableFuture<T>>(2);
+		private int pending = 0;
+		private Throwable failure = null;
+		
+		Race(String uri, BiFunction<Race<T>, Integer, CompletableFuture<T>> send) {
+			this.uri = uri;
+			this.send = send;
+		}
+		
+		T await() throws IOException {
+			requests.increment();
+			budget.onRequest();
+			start(0);
+			try {
+				long delay = getDelayNanos();
+				if (delay >= 0) {
+					try {
+						return get(done.get(delay, TimeUnit.NANOSECONDS));
+					} catch (TimeoutException e) {
+						hedge();
+					}
+				}
+				return get(done.get());
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted", e);
+			} catch (ExecutionException e) {
+				Throwable cause = unwrap(e);
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IOException(cause);
+			} finally {
+				record();
+				cancel();
+			}
+		}
+		
+		private T get(T result) {
+			if (winner.get() == 1) {
+				hedgeWins.increment();
+			}
+			return result;
+		}
+		
+		private synchronized void start(int i) {
+			pending++;
+			CompletableFuture<T> f;
+			try {
+				f = send.apply(this, i);
+			} catch (RuntimeException e) {
+				f = new CompletableFuture<T>();
+				f.completeExceptionally(e);
+			}
+			attempts.add(f);
+			f.whenComplete((v, e) -> completed(i, v, e));
+		}
+		
+		private synchronized void hedge() {
+			if (done.isDone() || winner.get() >= 0) {
+				return;
+			}
+			if (!budget.tryRetry()) {
+				budgetExhausted.increment();
+				return;
+			}
+			hedged.increment();
+			logger.debug("Hedging request {} after {} ms", uri, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			start(1);
+		}
+		
+		/**
+		 * @return true if the attempt is the first to receive headers, the other attempt is then cancelled
+		 */
+		boolean claim(int i) {
+			if (i == 0) {
+				record();
+			}
+			if (winner.compareAndSet(-1, i)) {
+				cancel();
+				return true;
+			}
+			return winner.get() == i;
+		}
+		
+		private synchronized void completed(int i, T value, Throwable e) {
+			pending--;
+			Throwable cause = e == null ? null : unwrap(e);
+			if (cause == null) {
+				if (claim(i)) {
+					done.complete(value);
+				}
+				return;
+			}
+			if (winner.get() == i || (cause instanceof HttpStatusError && claim(i))) {
+				done.completeExceptionally(cause);
+				return;
+			}
+			if (failure == null) {
+				failure = cause;
+			}
+			if (pending == 0 && winner.get() < 0) {
+				done.completeExceptionally(failure);
+			}
+		}
+		
+		/**
+		 * Records the first attempt's time to headers, or the time it took before it lost.
+		 */
+		private void record() {
+			if (recordLatency && recorded.compareAndSet(false, true)) {
+				latency.record(System.nanoTime() - start);
+			}
+		}
+		
+		private synchronized void cancel() {
+			int w = winner.get();
+			// An attempt that wins while it is being started is not yet in the list
+			for (int i = 0; i < attempts.size(); i++) {
+				if (i != w && !attempts.get(i).isDone()) {
+					attempts.get(i).cancel(true);
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Gives the caller's response body only to the attempt that wins.
+	 */
+	private class Attempt implements BooleanSupplier {
+		
+		private final Race<?> race;
+		private final int index;
+		
+		Attempt(Race<?> race, int index) {
+			this.race = race;
+			this.index = index;
+		}
+		
+		@Override
+		public boolean getAsBoolean() {
+			if (race.claim(index)) {
+				return true;
+			}
+			logger.trace("Rejecting body of hedged request {} that lost", race.uri);
+			return false;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,407 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestAsyncClient;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.metrics.RestMetricsRecorder;
+
+/**
+ * Limits the rate and concurrency of requests to a server, to protect it from our own bursts.
+ * 
+ * Use one instance per server root, i.e. around each single host client, with its own limiters.
+ * Either limiter may be null.
+ * 
+ * The blocking methods wait for permits or reject with {@link RequestRejectedException}, see {@link Mode}.
+ * The {@link RestAsyncClient} methods queue requests and start them when permits are available,
+ * using the async methods of the wrapped client if it has them, otherwise running the blocking
+ * methods on the executor given to {@link #RestClientLimiter(RestClient, RateLimiter, ConcurrencyLimiter, Executor)}.
+ */
+public class RestClientLimiter implements RestClient, RestAsyncClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientLimiter.class);
+	
+	/**
+	 * Default: {@value #DEFAULT_MAX_QUEUED}.
+	 */
+	public static final int DEFAULT_MAX_QUEUED = 1000;
+	
+	private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+		Thread t = new Thread(r, "restclient-limiter");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	/**
+	 * What the blocking methods do when the limit is reached.
+	 */
+	public enum Mode {
+		/**
+		 * Wait for a permit, up to the max wait.
+		 */
+		BLOCK,
+		/**
+		 * Throw {@link RequestRejectedException} immediately.
+		 */
+		REJECT
+	}
+	
+	private final RestClient client;
+	private final RateLimiter rate;
+	private final ConcurrencyLimiter concurrency;
+	private Mode mode = Mode.BLOCK;
+	private long maxWaitNanos = Long.MAX_VALUE;
+	private int maxQueued = DEFAULT_MAX_QUEUED;
+	private final Executor executor;
+	
+	private final ArrayDeque<Pending<?>> queue = new ArrayDeque<Pending<?>>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	private final AtomicInteger draining = new AtomicInteger();
+	
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder queued = new LongAdder();
+	
+	/**
+	 * @param client the single host client to make requests with, must be a {@link RestAsyncClient}
+	 * @param rate request rate limit, null for none
+	 * @param concurrency in-flight limit, null for none
+	 */
+	public RestClientLimiter(RestClient client, RateLimiter rate, ConcurrencyLimiter concurrency) {
+		this.client = client;
+		this.rate = rate;
+		this.concurrency = concurrency;
+		this.executor = null;
+		if (!(client instanceof RestAsyncClient)) {
+			throw new IllegalArgumentException("Client is not a RestAsyncClient, an executor for async requests is required");
+		}
+	}
+	
+	/**
+	 * @param client the single host client to make requests with
+	 * @param rate request rate limit, null for none
+	 * @param concurrency in-flight limit, null for none
+	 * @param executor runs async requests if the wrapped client is not a {@link RestAsyncClient}
+	 */
+	public RestClientLimiter(RestClient client, RateLimiter rate, ConcurrencyLimiter concurrency, Executor executor) {
+		this.client = client;
+		this.rate = rate;
+		this.concurrency = concurrency;
+		this.executor = Objects.requireNonNull(executor, "executor");
+	}
+	
+	/**
+	 * @param mode for the blocking methods, default {@link Mode#BLOCK}
+	 */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+	
+	/**
+	 * @param maxWaitMillis in {@link Mode#BLOCK}, reject requests that would wait longer than this, default no limit
+	 */
+	public void setMaxWait(long maxWaitMillis) {
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+	}
+	
+	/**
+	 * @param maxQueued async requests waiting for permits, above this they are rejected
+	 */
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+	
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		acquire(uri);
+		long start = System.nanoTime();
+		boolean dropped = false;
+		try {
+			client.get(uri, response);
+		} catch (IOException e) {
+			dropped = isOverload(e);
+			throw e;
+		} finally {
+			completed(start, dropped);
+		}
+	}
+	
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		acquire(uri);
+		long start = System.nanoTime();
+		boolean dropped = false;
+		try {
+			ResponseHeaders head = client.head(uri);
+			dropped = isOverload(head.getStatus());
+			return head;
+		} catch (IOException e) {
+			dropped = isOverload(e);
+			throw e;
+		} finally {
+			completed(start, dropped);
+		}
+	}
+	
+	@Override
+	public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+		if (client instanceof RestAsyncClient) {
+			return submit(uri, () -> ((RestAsyncClient) client).getAsync(uri, response));
+		}
+		return submit(uri, () -> CompletableFuture.runAsync(() -> {
+			try {
+				client.get(uri, response);
+			} catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor));
+	}
+	
+	@Override
+	public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+		if (client instanceof RestAsyncClient) {
+			return submit(uri, () -> ((RestAsyncClient) client).headAsync(uri));
+		}
+		return submit(uri, () -> CompletableFuture.supplyAsync(() -> {
+			try {
+				return client.head(uri);
+			} catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		}, executor));
+	}
+	
+	/**
+	 * Makes post-processing possible.
+	 * @return true if the failure indicates that the server is overloaded, which decreases the concurrency limit
+	 */
+	protected boolean isOverload(IOException e) {
+		if (e instanceof HttpStatusError) {
+			return isOverload(((HttpStatusError) e).getHttpStatus());
+		}
+		// Socket timeouts, and HttpClient request, connect and body timeouts
+		return e instanceof InterruptedIOException || e instanceof HttpTimeoutException;
+	}
+	
+	private boolean isOverload(int status) {
+		return status == 429 || status == HttpURLConnection.HTTP_UNAVAILABLE;
+	}
+	
+	private void acquire(String uri) throws IOException {
+		long wait = mode == Mode.BLOCK ? maxWaitNanos : 0;
+		long start = System.nanoTime();
+		boolean permit = false;
+		try {
+			if (concurrency != null && !concurrency.acquire(wait)) {
+				reject(uri, "concurrency");
+			}
+			permit = concurrency != null;
+			if (rate != null && !rate.acquire(wait == Long.MAX_VALUE ? wait : Math.max(0, wait - (System.nanoTime() - start)))) {
+				releasePermit();
+				reject(uri, "rate");
+			}
+		} catch (InterruptedException e) {
+			if (permit) {
+				releasePermit();
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", e);
+		}
+	}
+	
+	/**
+	 * Returns a concurrency permit for a request that was not sent.
+	 */
+	private void releasePermit() {
+		if (concurrency != null) {
+			concurrency.release();
+			drain();
+		}
+	}
+	
+	private void reject(String uri, String limit) throws RequestRejectedException {
+		rejected.increment();
+		throw new RequestRejectedException("Client side " + limit + " limit reached, not requesting " + uri);
+	}
+	
+	private void completed(long start, boolean dropped) {
+		if (concurrency != null) {
+			concurrency.release(System.nanoTime() - start, dropped);
+			drain();
+		}
+	}
+	
+	private <T> CompletableFuture<T> submit(String uri, Supplier<CompletableFuture<T>> request) {
+		Pending<T> p = new Pending<T>(request);
+		synchronized (queue) {
+			if (queue.size() >= maxQueued) {
+				rejected.increment();
+				p.result.completeExceptionally(new RequestRejectedException("Client side queue full, not requesting " + uri));
+				return p.result;
+			}
+			queue.add(p);
+		}
+		drain();
+		if (!p.started) {
+			queued.increment();
+		}
+		return p.result;
+	}
+	
+	/**
+	 * Starts queued requests while permits are available, from one thread at a time.
+	 * Requests that complete immediately call this again while starting,
+	 * which only makes the draining thread loop once more instead of nesting.
+	 */
+	private void drain() {
+		if (draining.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			drainQueue();
+			missed = draining.addAndGet(-missed);
+		} while (missed != 0);
+	}
+	
+	private void drainQueue() {
+		while (true) {
+			Pending<?> p;
+			synchronized (queue) {
+				p = queue.peek();
+				if (p == null) {
+					return;
+				}
+				if (concurrency != null && !concurrency.tryAcquire()) {
+					// Drained again when a request completes
+					return;
+				}
+				if (rate != null && !rate.tryAcquire()) {
+					if (concurrency != null) {
+						concurrency.release();
+					}
+					scheduleDrain(rate.getWaitNanos());
+					return;
+				}
+				queue.poll();
+			}
+			start(p);
+		}
+	}
+	
+	private void scheduleDrain(long nanos) {
+		if (drainScheduled.compareAndSet(false, true)) {
+			scheduler.schedule(() -> {
+				drainScheduled.set(false);
+				drain();
+			}, Math.max(nanos, 1), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private <T> void start(Pending<T> p) {
+		p.started = true;
+		long start = System.nanoTime();
+		CompletableFuture<T> f;
+		try {
+			f = p.request.get();
+		} catch (RuntimeException e) {
+			logger.debug("Failed to start queued request", e);
+			f = new CompletableFuture<T>();
+			f.completeExceptionally(e);
+		}
+		f.whenComplete((v, e) -> {
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			completed(start, cause instanceof IOException && isOverload((IOException) cause));
+			if (e != null) {
+				p.result.completeExceptionally(e);
+			} else {
+				p.result.complete(v);
+			}
+		});
+	}
+	
+	/**
+	 * @return number of requests rejected, including full async queue
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+	
+	/**
+	 * @return number of async requests that had to wait in queue
+	 */
+	public long getQueuedCount() {
+		return queued.sum();
+	}
+	
+	/**
+	 * @return number of async requests currently waiting
+	 */
+	public int getQueueSize() {
+		synchronized (queue) {
+			return queue.size();
+		}
+	}
+	
+	/**
+	 * Exposes limiter state as gauges.
+	 * @param metrics to register with
+	 * @param prefix for example the server name, gauge names are prefix + ".limiter.rejected" etc
+	 */
+	public void registerMetrics(RestMetricsRecorder metrics, String prefix) {
+		String p = prefix + ".limiter.";
+		metrics.registerGauge(p + "rejected", () -> getRejectedCount());
+		metrics.registerGauge(p + "queue", () -> getQueueSize());
+		if (concurrency != null) {
+			metrics.registerGauge(p + "limit", () -> concurrency.getLimit());
+			metrics.registerGauge(p + "inFlight", () -> concurrency.getInFlight());
+		}
+	}
+	
+	private static class Pending<T> {
+		
+		private final Supplier<CompletableFuture<T>> request;
+		private final CompletableFuture<T> result = new CompletableFuture<T>();
+		private volatile boolean started = false;
+		
+		Pending(Supplier<CompletableFuture<T>> request) {
+			this.request = request;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import javax.net.ssl.SSLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+
+/**
+ * Retries GET and HEAD on transient failures, with exponential backoff and jitter.
+ * 
+ * Retries connection failures and, by default, status 502, 503 and 504, honoring Retry-After.
+ * A GET is never retried once the client has asked for the response stream,
+ * so the caller's response never receives part of a body twice.
+ * Retries are limited by a {@link RetryBudget} so they can not amplify an outage.
+ */
+public class RestClientRetry implements RestClient {
+
+	private static final Logger logger = LoggerFactory.getLogger(RestClientRetry.class);
+	
+	/**
+	 * Default: {@value #DEFAULT_MAX_ATTEMPTS}, including the first request.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	
+	/**
+	 * Default: {@value #DEFAULT_BACKOFF_MILLIS} ms before the first retry, doubled for each retry.
+	 */
+	public static final long DEFAULT_BACKOFF_MILLIS = 100;
+	
+	/**
+	 * Default: {@value #DEFAULT_MAX_BACKOFF_MILLIS} ms, also the longest Retry-After that is waited for.
+	 */
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+	
+	private static final int[] DEFAULT_STATUSES = {
+			HttpURLConnection.HTTP_BAD_GATEWAY, HttpURLConnection.HTTP_UNAVAILABLE, HttpURLConnection.HTTP_GATEWAY_TIMEOUT};
+	
+	private final RestClient client;
+	private final RetryBudget budget;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+	private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+	private Set<Integer> statuses = new HashSet<Integer>();
+	private boolean retryGet = true;
+	private boolean retryHead = true;
+	
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder budgetExhausted = new LongAdder();
+	
+	public RestClientRetry(RestClient client) {
+		this(client, new RetryBudget());
+	}
+	
+	/**
+	 * @param client the client to make requests with
+	 * @param budget limits the number of retries, may be shared
+	 */
+	public RestClientRetry(RestClient client, RetryBudget budget) {
+		this.client = client;
+		this.budget = budget;
+		setRetryStatuses(DEFAULT_STATUSES);
+	}
+	
+	/**
+	 * @param maxAttempts including the first request, 1 to disable retries
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Max attempts must be at least 1, got " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * @param backoffMillis upper bound of the random delay before the first retry, doubled for each retry
+	 * @param maxBackoffMillis upper bound for any delay, Retry-After values above this are not waited for
+	 */
+	public void setBackoff(long backoffMillis, long maxBackoffMillis) {
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+	
+	/**
+	 * @param statuses HTTP status codes to retry, for example 429 in addition to the default 502, 503, 504
+	 */
+	public void setRetryStatuses(int... statuses) {
+		Set<Integer> s = new HashSet<Integer>();
+		for (int status : statuses) {
+			s.add(status);
+		}
+		this.statuses = s;
+	}
+	
+	/**
+	 * @param retryGet false to never retry GET, for servers where GET is not idempotent
+	 */
+	public void setRetryGet(boolean retryGet) {
+		this.retryGet = retryGet;
+	}
+	
+	public void setRetryHead(boolean retryHead) {
+		this.retryHead = retryHead;
+	}
+	
+	@Override
+	public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+		budget.onRequest();
+		for (int attempt = 1; ; attempt++) {
+			Started started = new Started();
+			try {
+				client.get(uri, ForwardingResponse.forward(response, started));
+				return;
+			} catch (IOException e) {
+				if (!retryGet || started.started || !retry(uri, attempt, e)) {
+					throw e;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public ResponseHeaders head(String uri) throws IOException {
+		budget.onRequest();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				ResponseHeaders head = client.head(uri);
+				// HEAD does not throw on status
+				if (!retryHead || !statuses.contains(head.getStatus()) || !retry(uri, attempt, new HttpStatusError(uri, head, ""))) {
+					return head;
+				}
+			} catch (IOException e) {
+				if (!retryHead || !retry(uri, attempt, e)) {
+					throw e;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true after waiting if another attempt should be made
+	 */
+	private boolean retry(String uri, int attempt, IOException e) throws IOException {
+		if (attempt >= maxAttempts || !isRetryable(e)) {
+			return false;
+		}
+		long delay = getBackoff(attempt);
+		if (e instanceof HttpStatusError) {
+			long retryAfter = getRetryAfterMillis(((HttpStatusError) e).getHeaders());
+			if (retryAfter > maxBackoffMillis) {
+				logger.debug("Not retrying {}, Retry-After {} ms is above limit", uri, retryAfter);
+				return false;
+			}
+			delay = Math.max(delay, retryAfter);
+		}
+		if (!budget.tryRetry()) {
+			budgetExhausted.increment();
+			logger.debug("Not retrying {}, retry budget exhausted", uri);
+			return false;
+		}
+		retries.increment();
+		logger.debug("Retrying {} in {} ms after attempt {}: {}", uri, delay, attempt, e.toString());
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", ie);
+		}
+		return true;
+	}
+	
+	/**
+	 * Makes post-processing possible.
+	 * @return true if the failure is likely transient and the request can be repeated
+	 */
+	protected boolean isRetryable(IOException e) {
+		if (e instanceof HttpStatusError) {
+			return statuses.contains(((HttpStatusError) e).getHttpStatus());
+		}
+		if (e instanceof UnknownHostException || e instanceof SSLException || e instanceof InterruptedIOException
+				|| e instanceof RequestRejectedException) {
+			return false;
+		}
+		return !(e.getCause() instanceof InterruptedException);
+	}
+	
+	/**
+	 * @return random delay with exponential upper bound, "full jitter"
+	 */
+	long getBackoff(int attempt) {
+		long bound = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 30));
+		return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound + 1);
+	}
+	
+	/**
+	 * @return delay requested by the server, 0 if none
+	 */
+	static long getRetryAfterMillis(ResponseHeaders headers) {
+		if (headers == null) {
+			return 0;
+		}
+		String value = headers.getFirst("Retry-After");
+		if (value == null) {
+			return 0;
+		}
+		value = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		} catch (NumberFormatException e) {
+			// HTTP-date
+		}
+		try {
+			ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+			return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+		} catch (DateTimeParseException e) {
+			logger.debug("Ignoring invalid Retry-After {}", value);
+			return 0;
+		}
+	}
+	
+	public long getRetryCount() {
+		return retries.sum();
+	}
+	
+	/**
+	 * @return number of retryable failures that were not retried because of the budget
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhausted.sum();
+	}
+	
+	public RetryBudget getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Notes if the client has started to write the body.
+	 */
+	private static class Started implements BooleanSupplier {
+		
+		private volatile boolean started = false;
+		
+		@Override
+		public boolean getAsBoolean() {
+			started = true;
+			return true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that limits retries to a fraction of requests, so that retries can not multiply
+ * the load on a server that is already failing.
+ * 
+ * Every request deposits a fraction of a token and every retry withdraws a whole token.
+ * The bucket starts full so that occasional failures are retried also at low traffic.
+ * Can be shared between clients, for example all clients of one server.
+ */
+public class RetryBudget {
+
+	private static final long SCALE = 1000;
+	
+	/**
+	 * Default: {@value #DEFAULT_RATIO}, i.e. retries add at most 20% to the request rate over time.
+	 */
+	public static final double DEFAULT_RATIO = 0.2;
+	
+	/**
+	 * Default: {@value #DEFAULT_CAPACITY} tokens.
+	 */
+	public static final int DEFAULT_CAPACITY = 10;
+	
+	private final long deposit;
+	private final long capacity;
+	private final AtomicLong tokens;
+	
+	public RetryBudget() {
+		this(DEFAULT_RATIO, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param ratio tokens added per request, the long term limit of retries per request
+	 * @param capacity maximum tokens, i.e. retries allowed in a burst
+	 */
+	public RetryBudget(double ratio, int capacity) {
+		if (ratio < 0 || capacity < 0) {
+			throw new IllegalArgumentException("Retry budget ratio and capacity must not be negative");
+		}
+		this.deposit = Math.round(ratio * SCALE);
+		this.capacity = capacity * SCALE;
+		this.tokens = new AtomicLong(this.capacity);
+	}
+	
+	/**
+	 * Called for every request that is not a retry.
+	 */
+	public void onRequest() {
+		if (deposit == 0) {
+			return;
+		}
+		long current;
+		do {
+			current = tokens.get();
+			if (current >= capacity) {
+				return;
+			}
+		} while (!tokens.compareAndSet(current, Math.min(capacity, current + deposit)));
+	}
+	
+	/**
+	 * @return true if a retry may be made, in which case a token was withdrawn
+	 */
+	public boolean tryRetry() {
+		long current;
+		do {
+			current = tokens.get();
+			if (current < SCALE) {
+				return false;
+			}
+		} while (!tokens.compareAndSet(current, current - SCALE));
+		return true;
+	}
+	
+	/**
+	 * @return retries currently available
+	 */
+	public double getAvailable() {
+		return (double) tokens.get() / SCALE;
+	}
+	
+}
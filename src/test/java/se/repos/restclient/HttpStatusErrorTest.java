@@ -35,6 +35,7 @@ import static org.mockito.Mockito.*;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -51,6 +52,21 @@ public class HttpStatusErrorTest {
 				"Server returned HTTP response code: 401 for URL: http://localhost/x/", e.getMessage());
 		assertSame(headers, e.getHeaders());
 		assertEquals("Response should be the page body from server", "<html/>", e.getResponse());
+		assertFalse(e.isTruncated());
+	}
+
+	@Test
+	public void testHttpStatusErrorCharset() {
+		ResponseHeaders headers = mock(ResponseHeaders.class);
+		when(headers.getStatus()).thenReturn(500);
+		when(headers.getContentType()).thenReturn("text/html; charset=\"ISO-8859-1\"");
+		HttpStatusError e = new HttpStatusError("http://localhost/x/", headers, new byte[] {'<', (byte) 0xE5, '>'}, true);
+		assertEquals("<\u00e5>", e.getResponse());
+		assertTrue(e.isTruncated());
+
+		when(headers.getContentType()).thenReturn("text/html");
+		e = new HttpStatusError("http://localhost/x/", headers, "\u00e5".getBytes(StandardCharsets.UTF_8), false);
+		assertEquals("Should default to UTF-8", "\u00e5", e.getResponse());
 	}
 
 }
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.repos.restclient.javase.RestClientJavaHttp;
+import se.repos.restclient.server.UnitHttpServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class RestDownloadTest {
+
+	UnitHttpServer server = null;
+	Path path = null;
+	final byte[] content = new byte[1000000];
+	final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+	final AtomicInteger truncate = new AtomicInteger(0);
+	volatile boolean acceptRanges = true;
+	volatile String etag = "\"v1\"";
+
+	@Before
+	public void setUp() throws Exception {
+		new Random(1).nextBytes(content);
+		path = Files.createTempFile("restdownload", ".bin");
+		server = UnitHttpServer.create();
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				if (acceptRanges) {
+					e.getResponseHeaders().add("Accept-Ranges", "bytes");
+				}
+				e.getResponseHeaders().add("ETag", etag);
+				if ("HEAD".equals(e.getRequestMethod())) {
+					e.getResponseHeaders().add("Content-Length", "" + content.length);
+					e.sendResponseHeaders(200, -1);
+					e.close();
+					return;
+				}
+				String range = e.getRequestHeaders().getFirst("Range");
+				String ifRange = e.getRequestHeaders().getFirst("If-Range");
+				ranges.add(range);
+				if (range == null || !acceptRanges || (ifRange != null && !ifRange.equals(etag))) {
+					e.sendResponseHeaders(200, content.length);
+					e.getResponseBody().write(content);
+					e.close();
+					return;
+				}
+				String[] r = range.substring("bytes=".length()).split("-");
+				int from = Integer.parseInt(r[0]);
+				int to = Integer.parseInt(r[1]);
+				int length = to - from + 1;
+				e.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+				e.sendResponseHeaders(206, length);
+				if (truncate.getAndDecrement() > 0) {
+					// Connection lost halfway
+					e.getResponseBody().write(content, from, length / 2);
+					e.getResponseBody().close();
+					return;
+				}
+				e.getResponseBody().write(content, from, length);
+				e.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+		Files.deleteIfExists(path);
+	}
+
+	RestAsyncClient client() {
+		return new RestClientJavaHttp(server.getRoot().toString(), null);
+	}
+
+	@Test
+	public void testSegments() throws IOException {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			RestDownload download = new RestDownload(client(), "/file", file);
+			download.setMinSegmentSize(100000);
+			download.run();
+			assertTrue(download.isComplete());
+			assertEquals(RestDownload.DEFAULT_SEGMENTS, download.getSegmentCount());
+			assertEquals(content.length, download.getLength());
+		}
+		assertArrayEquals(content, Files.readAllBytes(path));
+		assertEquals(RestDownload.DEFAULT_SEGMENTS, ranges.size());
+		assertTrue(ranges.contains("bytes=0-249999"));
+		assertTrue(ranges.contains("bytes=750000-999999"));
+	}
+
+	@Test
+	public void testNoRanges() throws IOException {
+		acceptRanges = false;
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			RestDownload download = new RestDownload(client(), "/file", file);
+			download.setMinSegmentSize(100000);
+			download.run();
+			assertEquals(1, download.getSegmentCount());
+		}
+		assertArrayEquals(content, Files.readAllBytes(path));
+		assertNull(ranges.get(0));
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		truncate.set(1);
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			RestDownload download = new RestDownload(client(), "/file", file);
+			download.setSegments(1);
+			try {
+				download.run();
+				fail("Should fail on truncated response");
+			} catch (IOException e) {
+				// expected
+			}
+			assertFalse(download.isComplete());
+			assertEquals(content.length / 2, download.getTransferred());
+			download.run();
+			assertTrue(download.isComplete());
+		}
+		assertArrayEquals(content, Files.readAllBytes(path));
+		assertEquals("bytes=500000-999999", ranges.get(1));
+	}
+
+	@Test
+	public void testResumeChanged() throws IOException {
+		truncate.set(1);
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			RestDownload download = new RestDownload(client(), "/file", file);
+			download.setSegments(1);
+			try {
+				download.run();
+				fail("Should fail on truncated response");
+			} catch (IOException e) {
+				// expected
+			}
+			content[0]++;
+			etag = "\"v2\"";
+			download.run();
+			assertTrue(download.isComplete());
+		}
+		assertArrayEquals("Should restart when If-Range does not match", content, Files.readAllBytes(path));
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.repos.restclient.javase.RestClientJavaHttp;
+import se.repos.restclient.server.UnitHttpServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class RestGetBatchTest {
+
+	@Test
+	public void testMaxInFlight() throws IOException {
+		final ScheduledExecutorService delay = Executors.newScheduledThreadPool(4);
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxSeen = new AtomicInteger();
+		RestAsyncClient client = new RestAsyncClient() {
+			@Override
+			public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+				maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				final CompletableFuture<Void> f = new CompletableFuture<Void>();
+				delay.schedule(new Runnable() {
+					@Override
+					public void run() {
+						inFlight.decrementAndGet();
+						f.complete(null);
+					}
+				}, 5, TimeUnit.MILLISECONDS);
+				return f;
+			}
+			@Override
+			public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		List<String> uris = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			uris.add("/" + i);
+		}
+		List<RestGetBatch.Result<RestResponseBean>> results = new RestGetBatch(client, 3).get(uris, uri -> new RestResponseBean());
+		delay.shutdown();
+		assertEquals(50, results.size());
+		assertTrue("Max in flight was " + maxSeen.get(), maxSeen.get() <= 3);
+		assertTrue("Should have run concurrently", maxSeen.get() > 1);
+	}
+
+	@Test
+	public void testPerItemErrors() throws IOException {
+		UnitHttpServer server = UnitHttpServer.create();
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				boolean missing = e.getRequestURI().getPath().startsWith("/missing");
+				e.sendResponseHeaders(missing ? 404 : 200, 0);
+				OutputStream out = e.getResponseBody();
+				out.write(e.getRequestURI().getPath().getBytes());
+				out.close();
+				e.close();
+			}
+		});
+		server.start();
+		try {
+			RestGetBatch batch = new RestGetBatch(new RestClientJavaHttp(server.getRoot().toString(), null), 4);
+			List<String> uris = new ArrayList<String>();
+			for (int i = 0; i < 10; i++) {
+				uris.add(i % 3 == 0 ? "/missing/" + i : "/found/" + i);
+			}
+			List<RestGetBatch.Result<RestResponseBean>> results = batch.get(uris, uri -> new RestResponseBean());
+			assertEquals(10, results.size());
+			for (int i = 0; i < 10; i++) {
+				RestGetBatch.Result<RestResponseBean> r = results.get(i);
+				assertEquals(uris.get(i), r.getUri());
+				if (i % 3 == 0) {
+					assertFalse(r.isSuccess());
+					assertEquals(404, r.getHttpStatusError().getHttpStatus());
+				} else {
+					assertTrue("Failed: " + r.getError(), r.isSuccess());
+					assertEquals(uris.get(i), r.getResponse().getBody());
+				}
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testSynchronousFailure() throws IOException {
+		RestAsyncClient client = new RestAsyncClient() {
+			@Override
+			public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+				if (!uri.startsWith("/")) {
+					throw new IllegalArgumentException("URIs must be relative to server root starting with slash");
+				}
+				return CompletableFuture.completedFuture(null);
+			}
+			@Override
+			public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		List<RestGetBatch.Result<RestResponseBean>> results = new RestGetBatch(client, 1)
+				.get(Arrays.asList("/a", "b", "/c"), uri -> new RestResponseBean());
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertTrue(results.get(1).getError() instanceof IllegalArgumentException);
+		assertTrue("Should continue after a failed item", results.get(2).isSuccess());
+	}
+
+}
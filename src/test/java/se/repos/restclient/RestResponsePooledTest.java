@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import se.repos.restclient.base.ByteBufferPool;
+
+public class RestResponsePooledTest {
+
+	@Test
+	public void testContentLength() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(2, false);
+		ResponseHeaders headers = mock(ResponseHeaders.class);
+		when(headers.getContentLength()).thenReturn(10000L);
+		RestResponsePooled response = new RestResponsePooled(pool);
+		OutputStream out = response.getResponseStream(headers);
+		byte[] body = new byte[10000];
+		Arrays.fill(body, (byte) 'x');
+		out.write(body);
+		ByteBuffer view = response.getBodyBuffer();
+		assertEquals(10000, view.remaining());
+		assertTrue(view.isReadOnly());
+		assertEquals(16384, view.capacity());
+		assertEquals(10000, response.getBodyChars().length());
+		response.release();
+		assertEquals(1, pool.getPooledCount());
+		try {
+			response.getBody();
+			fail("Should not allow access to the body after release");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testGrowWithoutContentLength() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool(4, false);
+		RestResponsePooled response = new RestResponsePooled(pool);
+		OutputStream out = response.getResponseStream(mock(ResponseHeaders.class));
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			String line = "line " + i + " åäö\n";
+			out.write(line.getBytes(StandardCharsets.UTF_8));
+			expected.append(line);
+		}
+		assertEquals(expected.toString(), response.getBody());
+		assertEquals("Smaller buffers should have been returned while growing", 4, pool.getPooledCount());
+		response.release();
+		response.release();
+		assertEquals(5, pool.getPooledCount());
+	}
+
+	@Test
+	public void testResponseStreamAgain() throws IOException {
+		RestResponsePooled response = new RestResponsePooled(new ByteBufferPool(2, false));
+		response.getResponseStream(mock(ResponseHeaders.class)).write("partial".getBytes(StandardCharsets.UTF_8));
+		response.getResponseStream(mock(ResponseHeaders.class)).write("body".getBytes(StandardCharsets.UTF_8));
+		assertEquals("Second attempt should replace the first", "body", response.getBody());
+		response.release();
+	}
+
+	@Test
+	public void testReuse() {
+		ByteBufferPool pool = new ByteBufferPool(1, true);
+		ByteBuffer b = pool.acquire(5000);
+		assertTrue(b.isDirect());
+		assertEquals(8192, b.capacity());
+		pool.release(b);
+		assertSame(b, pool.acquire(8000));
+		assertNotSame(b, pool.acquire(8000));
+		pool.release(ByteBuffer.allocate(8192));
+		assertEquals("Heap buffer should not be pooled with direct", 0, pool.getPooledCount());
+	}
+
+}
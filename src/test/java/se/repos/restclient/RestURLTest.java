@@ -21,8 +21,11 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -165,6 +168,44 @@ public class RestURLTest {
 		assertTrue("Should not encode keys", q.contains("list[]=1"));
 	}
 	
+	@Test
+	public void testQEncodingLikeURLEncoder() throws Exception {
+		String[] values = {"a b", "a+b", "*-_.~!'()", "åäö", "€ \uD83D\uDE00", "\uD800x", "%&=?/#", ""};
+		for (String v : values) {
+			assertEquals("Encoding of " + v, "/?v=" + URLEncoder.encode(v, "UTF-8").replace("+", "%20"),
+					new RestURL("/").q("v", v).p());
+		}
+	}
+	
+	@Test
+	public void testModifiedAfterParse() {
+		RestURL url = new RestURL("http://x.se/?a=b");
+		assertEquals("a=b", url.getURI().getRawQuery());
+		assertEquals(1, url.getQuery().size());
+		url.q("c", "d");
+		assertEquals("a=b&c=d", url.getURI().getRawQuery());
+		assertEquals(2, url.getQuery().size());
+		assertEquals("/?a=b&c=d", url.p());
+	}
+	
+	@Test
+	public void testQueryParse() {
+		Map<String, List<String>> q = new RestURL("/?a=b&c=&d=x%20y+z&a=2&").getQuery();
+		assertEquals(3, q.size());
+		assertEquals("b,2", "" + q.get("a"));
+		assertEquals("", q.get("c").get(0));
+		assertEquals("x y z", q.get("d").get(0));
+		assertEquals(1, q.get("d").size());
+		for (String invalid : new String[] {"/?a=b&&c=d", "/?&a=b", "/?a", "/?=b", "/?a=b&c"}) {
+			try {
+				new RestURL(invalid).getQuery();
+				fail("Should reject " + invalid);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
 	@Test
 	public void testAppendSameParam() {
 		RestURL url = new RestURL("/?a=b&c=d");
@@ -175,4 +216,32 @@ public class RestURLTest {
 		assertEquals("b,e f,3", "" + p.get("a"));
 	}
 
+	@Test
+	public void testUrlencodeOverridden() {
+		RestURL u = new RestURL("http://x.se/") {
+			@Override
+			protected void urlencode(StringBuilder to, String v) {
+				to.append(v.toUpperCase());
+			}
+		};
+		assertEquals("http://x.se/?k=V%", u.q("k", "v%").s());
+	}
+
+	@Test
+	public void testQueryValuesLinkedList() {
+		List<String> values = new RestURL("/?a=b&a=c").getQuery().get("a");
+		assertTrue(values instanceof LinkedList);
+		assertEquals("c", ((LinkedList<String>) values).getLast());
+	}
+
+	@Test
+	public void testGetQueryNewMap() {
+		RestURL u = new RestURL("http://x.se/?a=b&c=d");
+		u.getQuery().remove("a");
+		u.getQuery().get("c").add("e");
+		assertEquals(Arrays.asList("b"), u.getQuery().get("a"));
+		assertEquals(Arrays.asList("d"), u.getQuery().get("c"));
+		assertNotSame(u.getQuery(), u.getQuery());
+	}
+
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.base;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.repos.restclient.ResponseHeaders;
+
+public class ResponseHeadersMapTest {
+
+	private ResponseHeaders headers(Map<String, List<String>> map) {
+		return new ResponseHeadersMap(map) {
+			@Override
+			public int getStatus() {
+				return 200;
+			}
+			@Override
+			public String getContentType() {
+				return getFirst("Content-Type");
+			}
+		};
+	}
+
+	@Test
+	public void testAccessors() {
+		Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+		map.put(null, Arrays.asList("HTTP/1.1 200 OK"));
+		map.put("content-length", Arrays.asList(" 1234 "));
+		map.put("ETag", Arrays.asList("\"v1\""));
+		map.put("Last-Modified", Arrays.asList("Wed, 21 Oct 2015 07:28:00 GMT"));
+		ResponseHeaders h = headers(map);
+		assertEquals("Should find header regardless of case", 1234, h.getContentLength());
+		assertEquals("\"v1\"", h.getETag());
+		assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", h.getLastModified());
+		assertNull(h.getContentType());
+		assertEquals("1234", h.getHttpHeaders().firstValue("Content-Length").get().trim());
+
+		map.put("content-length", Arrays.asList("x"));
+		assertEquals(-1, h.getContentLength());
+		assertEquals(-1, headers(Collections.<String, List<String>>emptyMap()).getContentLength());
+	}
+
+	@Test
+	public void testToString() {
+		Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+		assertEquals("(empty headers)", headers(map).toString());
+		map.put(null, Arrays.asList("HTTP/1.1 200 OK"));
+		map.put("Vary", Arrays.asList("Accept", "Accept-Encoding"));
+		assertEquals("HTTP/1.1 200 OK, Vary: Accept, Vary: Accept-Encoding", headers(map).toString());
+	}
+
+}
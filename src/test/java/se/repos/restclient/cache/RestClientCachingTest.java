@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.javase.RestClientJavaHttp;
+import se.repos.restclient.server.UnitHttpServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class RestClientCachingTest {
+
+	UnitHttpServer server = null;
+
+	@Before
+	public void setUp() throws Exception {
+		server = UnitHttpServer.create();
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				String path = e.getRequestURI().getPath();
+				String etag = "\"v1\"";
+				if (path.startsWith("/fresh") || path.startsWith("/nonauthoritative")) {
+					e.getResponseHeaders().set("Cache-Control", "max-age=3600");
+				} else if (path.startsWith("/nostore")) {
+					e.getResponseHeaders().set("Cache-Control", "no-store");
+				} else {
+					e.getResponseHeaders().set("Cache-Control", "max-age=0");
+				}
+				e.getResponseHeaders().set("ETag", etag);
+				if (etag.equals(e.getRequestHeaders().getFirst("If-None-Match"))) {
+					e.sendResponseHeaders(304, -1);
+					e.close();
+					return;
+				}
+				e.getResponseHeaders().set("Content-Type", "text/plain");
+				e.sendResponseHeaders(path.startsWith("/nonauthoritative") ? 203 : 200, 0);
+				OutputStream out = e.getResponseBody();
+				out.write(("body of " + path).getBytes());
+				out.close();
+				e.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	RestClientCaching client() {
+		RestClient client = new RestClientJavaHttp(server.getRoot().toString(), null);
+		return new RestClientCaching(client);
+	}
+
+	@Test
+	public void testFresh() throws IOException {
+		RestClientCaching client = client();
+		for (int i = 0; i < 3; i++) {
+			RestResponseBean response = new RestResponseBean();
+			client.get("/fresh", response);
+			assertEquals("body of /fresh", response.getBody());
+			assertEquals("text/plain", response.getHeaders().getContentType());
+		}
+		assertEquals(1, server.getLog().size());
+		assertEquals(1, client.getMissCount());
+		assertEquals(2, client.getHitCount());
+	}
+
+	@Test
+	public void testOnly200Cached() throws IOException {
+		RestClientCaching client = client();
+		for (int i = 0; i < 2; i++) {
+			RestResponseBean response = new RestResponseBean();
+			client.get("/nonauthoritative", response);
+			assertEquals("body of /nonauthoritative", response.getBody());
+			assertEquals(203, response.getHeaders().getStatus());
+		}
+		assertEquals(2, server.getLog().size());
+		assertEquals(0, client.getHitCount());
+	}
+
+	@Test
+	public void testRevalidate() throws IOException {
+		RestClientCaching client = client();
+		for (int i = 0; i < 3; i++) {
+			RestResponseBean response = new RestResponseBean();
+			client.get("/stale", response);
+			assertEquals("body of /stale", response.getBody());
+			assertEquals(200, response.getHeaders().getStatus());
+		}
+		assertEquals(3, server.getLog().size());
+		assertEquals(1, client.getMissCount());
+		assertEquals(2, client.getRevalidationCount());
+		assertEquals(0, client.getHitCount());
+	}
+
+	@Test
+	public void testNoStore() throws IOException {
+		RestClientCaching client = client();
+		client.get("/nostore", new RestResponseBean());
+		client.get("/nostore", new RestResponseBean());
+		assertEquals(0, client.getSize());
+		assertEquals(2, client.getMissCount());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		RestClient http = new RestClientJavaHttp(server.getRoot().toString(), null);
+		RestClientCaching client = new RestClientCaching(http, 2, 1024);
+		client.get("/fresh/1", new RestResponseBean());
+		client.get("/fresh/2", new RestResponseBean());
+		client.get("/fresh/1", new RestResponseBean());
+		client.get("/fresh/3", new RestResponseBean());
+		assertEquals(2, client.getSize());
+		assertEquals(1, client.getEvictionCount());
+		client.get("/fresh/1", new RestResponseBean());
+		assertEquals("Recently used should have been kept", 2, client.getHitCount());
+		client.get("/fresh/2", new RestResponseBean());
+		assertEquals(4, client.getMissCount());
+	}
+
+}
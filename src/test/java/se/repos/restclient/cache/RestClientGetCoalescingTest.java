@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.RestResponseTimeout;
+
+public class RestClientGetCoalescingTest {
+
+	static class SlowClient implements RestClient {
+		final AtomicInteger gets = new AtomicInteger();
+		final ResponseHeaders headers;
+		SlowClient(int status) {
+			headers = mock(ResponseHeaders.class);
+			when(headers.getStatus()).thenReturn(status);
+		}
+		@Override
+		public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+			gets.incrementAndGet();
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (headers.getStatus() != 200) {
+				throw new HttpStatusError(uri, headers, "error " + uri);
+			}
+			response.getResponseStream(headers).write(("body of " + uri).getBytes());
+		}
+		@Override
+		public ResponseHeaders head(String uri) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private List<Future<RestResponseBean>> getConcurrent(final RestClient client, String... uris) {
+		ExecutorService threads = Executors.newFixedThreadPool(uris.length);
+		List<Future<RestResponseBean>> results = new ArrayList<Future<RestResponseBean>>();
+		for (final String uri : uris) {
+			results.add(threads.submit(new Callable<RestResponseBean>() {
+				@Override
+				public RestResponseBean call() throws Exception {
+					RestResponseBean response = new RestResponseBean();
+					client.get(uri, response);
+					return response;
+				}
+			}));
+		}
+		threads.shutdown();
+		return results;
+	}
+
+	@Test
+	public void testWaiterTimeout() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<RestResponse> received = new ArrayList<RestResponse>();
+		SlowClient http = new SlowClient(200) {
+			@Override
+			public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+				received.add(response);
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				response.getResponseStream(headers).write("body".getBytes());
+			}
+		};
+		class Timeout extends RestResponseBean implements RestResponseTimeout {
+			@Override
+			public Duration getTimeout() {
+				return Duration.ofMillis(100);
+			}
+		}
+		final RestClientGetCoalescing client = new RestClientGetCoalescing(http);
+		ExecutorService thread = Executors.newSingleThreadExecutor();
+		Future<RestResponseBean> leader = thread.submit(new Callable<RestResponseBean>() {
+			@Override
+			public RestResponseBean call() throws Exception {
+				RestResponseBean response = new Timeout();
+				client.get("/a", response);
+				return response;
+			}
+		});
+		thread.shutdown();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals("Leader's timeout should be forwarded",
+				Duration.ofMillis(100), ((RestResponseTimeout) received.get(0)).getTimeout());
+		try {
+			client.get("/a", new Timeout());
+			fail("Should not wait longer than the caller's timeout");
+		} catch (HttpTimeoutException e) {
+			assertEquals(1, client.getCoalescedCount());
+		} finally {
+			release.countDown();
+		}
+		assertEquals("body", leader.get().getBody());
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		SlowClient http = new SlowClient(200);
+		RestClientGetCoalescing client = new RestClientGetCoalescing(http);
+		List<Future<RestResponseBean>> results = getConcurrent(client, "/a", "/a", "/a", "/a", "/b", "/b");
+		for (int i = 0; i < 4; i++) {
+			assertEquals("body of /a", results.get(i).get().getBody());
+			assertSame(http.headers, results.get(i).get().getHeaders());
+		}
+		assertEquals("body of /b", results.get(5).get().getBody());
+		assertEquals(2, http.gets.get());
+		assertEquals(2, client.getRequestCount());
+		assertEquals(4, client.getCoalescedCount());
+	}
+
+	@Test
+	public void testCoalesceError() throws Exception {
+		SlowClient http = new SlowClient(503);
+		RestClientGetCoalescing client = new RestClientGetCoalescing(http);
+		List<Future<RestResponseBean>> results = getConcurrent(client, "/a", "/a", "/a");
+		for (Future<RestResponseBean> r : results) {
+			try {
+				r.get();
+				fail("Should share the status error");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof HttpStatusError);
+				assertEquals(503, ((HttpStatusError) e.getCause()).getHttpStatus());
+			}
+		}
+		assertEquals(1, http.gets.get());
+	}
+
+	@Test
+	public void testLeaderStreamFails() throws Exception {
+		final SlowClient http = new SlowClient(200);
+		final RestClientGetCoalescing client = new RestClientGetCoalescing(http);
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		Future<?> leader = threads.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.get("/a", new RestResponseBean() {
+					@Override
+					public OutputStream getResponseStream(ResponseHeaders headers) {
+						return new OutputStream() {
+							@Override
+							public void write(int b) throws IOException {
+								// Fail only once the other caller is waiting for this request
+								while (client.getCoalescedCount() == 0) {
+									Thread.yield();
+								}
+								throw new IOException("disk full");
+							}
+						};
+					}
+				});
+				return null;
+			}
+		});
+		while (http.gets.get() == 0) {
+			Thread.yield();
+		}
+		Future<RestResponseBean> waiter = threads.submit(new Callable<RestResponseBean>() {
+			@Override
+			public RestResponseBean call() throws Exception {
+				RestResponseBean response = new RestResponseBean();
+				client.get("/a", response);
+				return response;
+			}
+		});
+		threads.shutdown();
+		try {
+			leader.get();
+			fail("Leader should get its own stream's failure");
+		} catch (ExecutionException e) {
+			assertEquals("disk full", e.getCause().getMessage());
+		}
+		assertEquals("Waiter should request again", "body of /a", waiter.get().getBody());
+		assertEquals(2, http.gets.get());
+		assertEquals(1, client.getCoalescedCount());
+	}
+
+	@Test
+	public void testSequentialNotShared() throws Exception {
+		SlowClient http = new SlowClient(200);
+		RestClientGetCoalescing client = new RestClientGetCoalescing(http);
+		client.get("/a", new RestResponseBean());
+		client.get("/a", new RestResponseBean());
+		assertEquals(2, http.gets.get());
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.cache;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.RestResponseRange;
+import se.repos.restclient.RestResponseTimeout;
+
+public class RestClientHeadCacheTest {
+
+	static class CountingClient implements RestClient {
+		final AtomicInteger heads = new AtomicInteger();
+		final CountDownLatch release;
+		final ResponseHeaders headers;
+		CountingClient(CountDownLatch release, int status) {
+			this.release = release;
+			this.headers = mock(ResponseHeaders.class);
+			when(headers.getStatus()).thenReturn(status);
+		}
+		@Override
+		public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+			response.getResponseStream(headers).write("body".getBytes());
+		}
+		@Override
+		public ResponseHeaders head(String uri) throws IOException {
+			heads.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return headers;
+		}
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		CountingClient http = new CountingClient(new CountDownLatch(0), 200);
+		RestClientHeadCache client = new RestClientHeadCache(http, 100);
+		assertSame(http.headers, client.head("/a"));
+		assertSame(http.headers, client.head("/a"));
+		client.head("/b");
+		assertEquals(2, http.heads.get());
+		assertEquals(1, client.getHitCount());
+		Thread.sleep(150);
+		client.head("/a");
+		assertEquals("Should expire after TTL", 3, http.heads.get());
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountingClient http = new CountingClient(release, 200);
+		final RestClientHeadCache client = new RestClientHeadCache(http, 1000);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Future<ResponseHeaders>> results = new ArrayList<Future<ResponseHeaders>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(threads.submit(new Callable<ResponseHeaders>() {
+				@Override
+				public ResponseHeaders call() throws Exception {
+					return client.head("/same");
+				}
+			}));
+		}
+		Thread.sleep(100);
+		release.countDown();
+		for (Future<ResponseHeaders> r : results) {
+			assertSame(http.headers, r.get());
+		}
+		threads.shutdown();
+		assertEquals("Concurrent HEADs should share one request", 1, http.heads.get());
+		assertEquals(7, client.getCoalescedCount() + client.getHitCount());
+	}
+
+	@Test
+	public void testGetInvalidates() throws Exception {
+		CountingClient http = new CountingClient(new CountDownLatch(0), 200);
+		RestClientHeadCache client = new RestClientHeadCache(http, 10000);
+		client.head("/a");
+		client.get("/a", new RestResponseBean());
+		client.head("/a");
+		assertEquals(2, http.heads.get());
+
+		client.setRefreshOnGet(true);
+		client.get("/a", new RestResponseBean());
+		client.head("/a");
+		assertEquals("GET should have refreshed the entry", 2, http.heads.get());
+	}
+
+	@Test
+	public void testMaxEntries() throws Exception {
+		CountingClient http = new CountingClient(new CountDownLatch(0), 200);
+		RestClientHeadCache client = new RestClientHeadCache(http, 10000, 2);
+		client.head("/a");
+		client.head("/b");
+		client.head("/c");
+		assertEquals(2, client.getSize());
+		client.head("/c");
+		assertEquals("Latest should be kept", 3, http.heads.get());
+		client.head("/a");
+		assertEquals("Oldest should be evicted", 4, http.heads.get());
+	}
+
+	@Test
+	public void testRefreshOnGetKeepsResponseOptions() throws Exception {
+		final List<RestResponse> received = new ArrayList<RestResponse>();
+		CountingClient http = new CountingClient(new CountDownLatch(0), 200) {
+			@Override
+			public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+				received.add(response);
+				super.get(uri, response);
+			}
+		};
+		RestClientHeadCache client = new RestClientHeadCache(http, 10000);
+		client.setRefreshOnGet(true);
+
+		class Range extends RestResponseBean implements RestResponseRange {
+			@Override
+			public long getRangeStart() {
+				return 2;
+			}
+			@Override
+			public long getRangeEnd() {
+				return -1;
+			}
+			@Override
+			public String getIfRange() {
+				return null;
+			}
+		}
+		Range range = new Range();
+		client.get("/a", range);
+		assertSame("Range requests should not be wrapped", range, received.get(0));
+
+		class Timeout extends RestResponseBean implements RestResponseTimeout {
+			@Override
+			public Duration getTimeout() {
+				return Duration.ofSeconds(3);
+			}
+		}
+		client.get("/a", new Timeout());
+		assertEquals(Duration.ofSeconds(3), ((RestResponseTimeout) received.get(1)).getTimeout());
+		client.head("/a");
+		assertEquals("GET should have refreshed the entry", 0, http.heads.get());
+	}
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+
+public class BodySubscriberInputStreamTest {
+
+	private BodySubscriberInputStream subscribed() {
+		BodySubscriberInputStream in = new BodySubscriberInputStream(BodyDeadline.after(Duration.ofSeconds(5)));
+		in.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+			}
+			@Override
+			public void cancel() {
+			}
+		});
+		return in;
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		BodySubscriberInputStream in = subscribed();
+		in.onNext(Collections.singletonList(ByteBuffer.wrap("ab".getBytes())));
+		in.onComplete();
+		assertEquals('a', in.read());
+		assertEquals('b', in.read());
+		assertEquals(-1, in.read());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testErrorRethrown() throws IOException {
+		BodySubscriberInputStream in = subscribed();
+		in.onNext(Collections.singletonList(ByteBuffer.wrap("a".getBytes())));
+		in.onError(new IOException("connection reset"));
+		assertEquals('a', in.read());
+		for (int i = 0; i < 2; i++) {
+			try {
+				in.read(new byte[10], 0, 10);
+				fail("Should keep failing after the body failed");
+			} catch (IOException e) {
+				assertEquals("connection reset", e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestAsyncClient;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.server.UnitHttpServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class RestAsyncClientJavaIntegrationTest {
+
+	UnitHttpServer server = null;
+
+	@Before
+	public void setUp() throws Exception {
+		server = UnitHttpServer.create();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	RestAsyncClient client() {
+		return new RestClientJavaHttp(server.getRoot().toString(), null);
+	}
+
+	@Test public void testGetAsync() {
+		server.start();
+		RestResponseBean response = new RestResponseBean();
+		client().getAsync("/a/b.txt?c=d", response).join();
+		assertEquals(200, response.getHeaders().getStatus());
+		assertEquals("text/plain", response.getHeaders().getContentType());
+		assertTrue("Got: " + response.getBody(), response.getBody().startsWith("GET\n"));
+		assertTrue("Got: " + response.getBody(), response.getBody().endsWith("c=d\n"));
+	}
+
+	@Test public void testGetAsyncPublisher() throws Exception {
+		server.start();
+		final StringBuilder body = new StringBuilder();
+		final CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<Flow.Subscription>();
+		CompletableFuture<Void> done = client().getAsync("/a?c=d", new RestResponsePublisher() {
+			@Override
+			public void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> publisher) {
+				publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+					@Override
+					public void onSubscribe(Flow.Subscription subscription) {
+						subscribed.complete(subscription);
+					}
+					@Override
+					public void onNext(ByteBuffer item) {
+						body.append(StandardCharsets.UTF_8.decode(item));
+					}
+					@Override
+					public void onError(Throwable throwable) {
+					}
+					@Override
+					public void onComplete() {
+					}
+				});
+			}
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				throw new AssertionError("Should publish the body");
+			}
+		});
+		Flow.Subscription subscription = subscribed.get(5, TimeUnit.SECONDS);
+		Thread.sleep(100);
+		assertFalse("Should wait for demand", done.isDone());
+		subscription.request(Long.MAX_VALUE);
+		done.get(5, TimeUnit.SECONDS);
+		assertTrue("Got: " + body, body.toString().startsWith("GET\n"));
+		assertTrue("Got: " + body, body.toString().endsWith("c=d\n"));
+	}
+	@Test public void testGetAsyncConcurrent() {
+		server.start();
+		RestAsyncClient client = client();
+		List<RestResponseBean> responses = new ArrayList<RestResponseBean>();
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 20; i++) {
+			RestResponseBean r = new RestResponseBean();
+			responses.add(r);
+			futures.add(client.getAsync("/?n=" + i, r));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+		for (int i = 0; i < 20; i++) {
+			assertTrue(responses.get(i).getBody().endsWith("n=" + i + "\n"));
+		}
+		assertEquals(20, server.getLog().size());
+	}
+
+	@Test public void testGetAsyncUnknownHostException() {
+		server.start();
+		RestAsyncClient client = new RestClientJavaHttp("http://bogus.simonsoft.se", null);
+		try {
+			client.getAsync("/a/b.txt", new RestResponseBean()).join();
+			fail("should complete exceptionally");
+		} catch (CompletionException e) {
+			assertTrue("Got " + e.getCause(), e.getCause() instanceof UnknownHostException);
+		}
+	}
+
+	@Test public void testGetAsyncServerError() {
+		final String body = "<html><body>\n<h1>Server error</h1><p>This error occurred</p></body></html>";
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.sendResponseHeaders(500, 0);
+				OutputStream out = e.getResponseBody();
+				out.write(body.getBytes());
+				out.close();
+				e.close();
+			}
+		});
+		server.start();
+		RestResponseBean response = new RestResponseBean();
+		try {
+			client().getAsync("/", response).join();
+			fail("Should complete exceptionally on 500");
+		} catch (CompletionException e) {
+			assertTrue("Got " + e.getCause(), e.getCause() instanceof HttpStatusError);
+			HttpStatusError error = (HttpStatusError) e.getCause();
+			assertEquals(500, error.getHttpStatus());
+			assertEquals(body, error.getResponse());
+		}
+		assertEquals("Response stream should not have been requested", null, response.getHeaders());
+	}
+
+	@Test public void testHeadAsync() {
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.getResponseHeaders().put("Location", Arrays.asList("/start/"));
+				e.sendResponseHeaders(302, -1);
+				e.close();
+			}
+		});
+		server.start();
+		ResponseHeaders head = client().headAsync("/").join();
+		assertEquals("should return the status code, not follow the redirect", 302, head.getStatus());
+	}
+
+}
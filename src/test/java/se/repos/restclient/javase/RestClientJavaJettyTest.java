@@ -17,6 +17,8 @@ package se.repos.restclient.javase;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -182,7 +184,7 @@ public class RestClientJavaJettyTest {
 		
 		RestAuthentication auth = mock(RestAuthentication.class);
 		// TODO verify realm
-		when(auth.getUsername(null, null, null)).thenReturn("demo").thenReturn("demo").thenReturn("admin").thenReturn("admin");
+		when(auth.getUsername(null, null, null)).thenReturn("demo").thenReturn("admin");
 		when(auth.getPassword(null, null, null, "demo")).thenReturn("pdemo");
 		when(auth.getPassword(null, null, null, "admin")).thenReturn("padmin");
 		
@@ -195,8 +197,13 @@ public class RestClientJavaJettyTest {
 		//assertEquals("", authHeaders.get(0));
 		client.get("/something", response);
 		assertEquals("Should have authenticated again", 2, authHeaders.size());
-		assertTrue("Should be different users in the two authentications", 
-				!authHeaders.get(0).equals(authHeaders.get(1)));
+		assertEquals("Should reuse credentials", authHeaders.get(0), authHeaders.get(1));
+		((RestClientJavaHttp) client).refreshAuthentication();
+		client.get("/something", response);
+		assertEquals(3, authHeaders.size());
+		assertTrue("Should be different users after refresh", 
+				!authHeaders.get(1).equals(authHeaders.get(2)));
+		verify(auth, times(2)).getUsername(null, null, null);
 		
 	}
 	
@@ -16,16 +16,39 @@
 package se.repos.restclient.javase;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.net.http.HttpClient;
 import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.SSLContext;
 
 import org.junit.After;
 import org.junit.Before;
@@ -33,10 +56,15 @@ import org.junit.Test;
 
 import se.repos.restclient.HttpStatusError;
 import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.ResponseHeadersDecoded;
+import se.repos.restclient.RestAuthentication;
 import se.repos.restclient.RestGetClient;
 import se.repos.restclient.RestClient;
 import se.repos.restclient.RestResponse;
 import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.RestResponseChannel;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.RestResponseTimeout;
 import se.repos.restclient.server.UnitHttpServer;
 
 import com.sun.net.httpserver.HttpExchange;
@@ -75,6 +103,9 @@ public class RestGetClientJavaIntegrationTest {
 			public OutputStream getResponseStream(ResponseHeaders headers) {
 				assertEquals(200, headers.getStatus());
 				assertEquals("text/plain", headers.getContentType());
+				assertEquals("Chunked response", -1, headers.getContentLength());
+				assertEquals("text/plain", headers.getFirst("content-type"));
+				assertEquals("text/plain", headers.getHttpHeaders().firstValue("Content-Type").get());
 				return System.out;
 			}
 		});
@@ -82,6 +113,345 @@ public class RestGetClientJavaIntegrationTest {
 		assertEquals("should have done 1 request", 1, server.getLog().size());
 	}
 	
+	@Test public void testGetChannel() throws IOException {
+		final byte[] content = new byte[1024 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.sendResponseHeaders(200, content.length);
+				e.getResponseBody().write(content);
+				e.close();
+			}
+		});
+		server.start();
+		File file = File.createTempFile("restclient", ".bin");
+		file.deleteOnExit();
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			client().get("/large", new RestResponseChannel() {
+				@Override
+				public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+					assertEquals(200, headers.getStatus());
+					return channel;
+				}
+			});
+		}
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		file.delete();
+	}
+	
+	@Test public void testForcedAuthenticationRefreshDuringComputation() throws Exception {
+		final List<String> authHeaders = Collections.synchronizedList(new ArrayList<String>());
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				authHeaders.add(e.getRequestHeaders().getFirst("Authorization"));
+				e.sendResponseHeaders(200, -1);
+				e.close();
+			}
+		});
+		server.start();
+		final CountDownLatch computing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger usernames = new AtomicInteger();
+		RestAuthentication auth = new RestAuthentication() {
+			@Override
+			public String getUsername(String root, String resource, String realm) {
+				if (usernames.incrementAndGet() == 1) {
+					computing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					return "old";
+				}
+				return "new";
+			}
+			@Override
+			public String getPassword(String root, String resource, String realm, String username) {
+				return "p" + username;
+			}
+			@Override
+			public SSLContext getSSLContext(String root) {
+				return null;
+			}
+		};
+		final RestClientJavaHttp client = new RestClientJavaHttp(server.getRoot().toString(), auth);
+		Thread first = new Thread(() -> {
+			try {
+				client.get("/", new RestResponseBean());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		first.start();
+		computing.await();
+		client.refreshAuthentication();
+		release.countDown();
+		first.join();
+		client.get("/", new RestResponseBean());
+		assertEquals(2, authHeaders.size());
+		assertEquals("Refresh should win over the computation in progress", 2, usernames.get());
+		assertFalse(authHeaders.get(0).equals(authHeaders.get(1)));
+	}
+	
+	@Test public void testGetPublisher() throws IOException {
+		final byte[] content = new byte[1024 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.sendResponseHeaders(200, content.length);
+				e.getResponseBody().write(content);
+				e.close();
+			}
+		});
+		server.start();
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+		final AtomicInteger buffers = new AtomicInteger();
+		final AtomicBoolean completed = new AtomicBoolean();
+		client().get("/large", new RestResponsePublisher() {
+			@Override
+			public void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> body) {
+				assertEquals(200, headers.getStatus());
+				body.subscribe(new Flow.Subscriber<ByteBuffer>() {
+					private Flow.Subscription subscription;
+					@Override
+					public void onSubscribe(Flow.Subscription subscription) {
+						this.subscription = subscription;
+						subscription.request(1);
+					}
+					@Override
+					public void onNext(ByteBuffer item) {
+						buffers.incrementAndGet();
+						byte[] b = new byte[item.remaining()];
+						item.get(b);
+						received.write(b, 0, b.length);
+						subscription.request(1);
+					}
+					@Override
+					public void onError(Throwable throwable) {
+						fail("Unexpected " + throwable);
+					}
+					@Override
+					public void onComplete() {
+						completed.set(true);
+					}
+				});
+			}
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				throw new AssertionError("Should publish the body");
+			}
+		});
+		assertTrue("Should have completed before get returned", completed.get());
+		assertTrue(buffers.get() > 1);
+		assertArrayEquals(content, received.toByteArray());
+	}
+	
+	@Test public void testGetPublisherCancel() throws IOException {
+		final byte[] content = new byte[1024 * 1024];
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.sendResponseHeaders(200, content.length);
+				try {
+					e.getResponseBody().write(content);
+				} catch (IOException expected) {
+					// client cancelled
+				}
+				e.close();
+			}
+		});
+		server.start();
+		final AtomicInteger buffers = new AtomicInteger();
+		client().get("/large", new RestResponsePublisher() {
+			@Override
+			public void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> body) {
+				body.subscribe(new Flow.Subscriber<ByteBuffer>() {
+					private Flow.Subscription subscription;
+					@Override
+					public void onSubscribe(Flow.Subscription subscription) {
+						this.subscription = subscription;
+						subscription.request(1);
+					}
+					@Override
+					public void onNext(ByteBuffer item) {
+						buffers.incrementAndGet();
+						subscription.cancel();
+					}
+					@Override
+					public void onError(Throwable throwable) {
+					}
+					@Override
+					public void onComplete() {
+					}
+				});
+			}
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				throw new AssertionError("Should publish the body");
+			}
+		});
+		assertEquals("Get should return when the subscriber cancels", 1, buffers.get());
+	}
+	
+	@Test public void testGetCompressed() throws IOException {
+		final byte[] content = "compressible compressible compressible\n".repeat(1000).getBytes("UTF-8");
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				if (e.getRequestHeaders().getFirst("Accept-Encoding") == null) {
+					e.sendResponseHeaders(200, content.length);
+					e.getResponseBody().write(content);
+				} else {
+					ByteArrayOutputStream b = new ByteArrayOutputStream();
+					try (GZIPOutputStream gzip = new GZIPOutputStream(b)) {
+						gzip.write(content);
+					}
+					e.getResponseHeaders().add("Content-Encoding", "gzip");
+					e.sendResponseHeaders(200, b.size());
+					e.getResponseBody().write(b.toByteArray());
+				}
+				e.close();
+			}
+		});
+		server.start();
+		RestClientJavaHttp client = (RestClientJavaHttp) client();
+		RestResponseBean plain = new RestResponseBean();
+		client.get("/", plain);
+		assertFalse(plain.getHeaders() instanceof ResponseHeadersDecoded);
+		assertEquals(new String(content, "UTF-8"), plain.getBody());
+		
+		client.setAcceptEncoding(true);
+		RestResponseBean compressed = new RestResponseBean();
+		client.get("/", compressed);
+		assertEquals(new String(content, "UTF-8"), compressed.getBody());
+		ResponseHeadersDecoded headers = (ResponseHeadersDecoded) compressed.getHeaders();
+		assertEquals("gzip", headers.getContentEncoding());
+		assertEquals("gzip", headers.get("Content-Encoding").get(0));
+		assertEquals(content.length, headers.getDecodedLength());
+		assertTrue("Got " + headers.getEncodedLength(), headers.getEncodedLength() > 0 && headers.getEncodedLength() < content.length / 10);
+	}
+	
+	@Test public void testGetCompressedNotNegotiatedForChannelAndPublisher() throws IOException {
+		final byte[] content = "compressible compressible compressible\n".repeat(1000).getBytes("UTF-8");
+		final List<String> acceptEncoding = Collections.synchronizedList(new ArrayList<String>());
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				acceptEncoding.add(e.getRequestHeaders().getFirst("Accept-Encoding"));
+				e.sendResponseHeaders(200, content.length);
+				e.getResponseBody().write(content);
+				e.close();
+			}
+		});
+		server.start();
+		RestClientJavaHttp client = (RestClientJavaHttp) client();
+		client.setAcceptEncoding(true);
+		
+		final ByteArrayOutputStream channel = new ByteArrayOutputStream();
+		client.get("/", new RestResponseChannel() {
+			@Override
+			public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+				return Channels.newChannel(channel);
+			}
+		});
+		assertArrayEquals(content, channel.toByteArray());
+		
+		final ByteArrayOutputStream published = new ByteArrayOutputStream();
+		client.get("/", new RestResponsePublisher() {
+			@Override
+			public void onResponseBody(ResponseHeaders headers, Flow.Publisher<ByteBuffer> body) {
+				body.subscribe(new Flow.Subscriber<ByteBuffer>() {
+					@Override
+					public void onSubscribe(Flow.Subscription subscription) {
+						subscription.request(Long.MAX_VALUE);
+					}
+					@Override
+					public void onNext(ByteBuffer item) {
+						byte[] b = new byte[item.remaining()];
+						item.get(b);
+						published.write(b, 0, b.length);
+					}
+					@Override
+					public void onError(Throwable throwable) {
+					}
+					@Override
+					public void onComplete() {
+					}
+				});
+			}
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				throw new AssertionError("Should publish the body");
+			}
+		});
+		assertArrayEquals(content, published.toByteArray());
+		assertEquals(Arrays.asList(null, null), acceptEncoding);
+	}
+	
+	@Test(expected = HttpTimeoutException.class)
+	public void testGetRequestTimeout() throws IOException {
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException ex) {
+					throw new IOException(ex);
+				}
+				e.sendResponseHeaders(200, -1);
+				e.close();
+			}
+		});
+		server.start();
+		RestClientJavaHttpConfig config = new RestClientJavaHttpConfig();
+		config.setRequestTimeout(Duration.ofMillis(100));
+		config.setVersion(HttpClient.Version.HTTP_1_1);
+		new RestClientJavaHttp(server.getRoot().toString(), null, config).get("/slow", new RestResponseBean());
+	}
+	
+	@Test public void testGetBodyDeadline() throws IOException {
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.sendResponseHeaders(200, 0);
+				try {
+					for (int i = 0; i < 20; i++) {
+						e.getResponseBody().write("trickle\n".getBytes());
+						e.getResponseBody().flush();
+						Thread.sleep(100);
+					}
+				} catch (InterruptedException ex) {
+					throw new IOException(ex);
+				} catch (IOException ex) {
+					// client gave up
+				}
+				e.close();
+			}
+		});
+		server.start();
+		class Response extends RestResponseBean implements RestResponseTimeout {
+			@Override
+			public Duration getTimeout() {
+				return Duration.ofMillis(300);
+			}
+		}
+		long start = System.currentTimeMillis();
+		try {
+			client().get("/trickle", new Response());
+			fail("Should time out while receiving body");
+		} catch (HttpTimeoutException e) {
+			assertTrue("Took " + (System.currentTimeMillis() - start), System.currentTimeMillis() - start < 1500);
+		}
+	}
+	
 	@Test(expected = UnknownHostException.class)
 	public void testGetUnknownHostException() throws IOException {
 		server.start();
@@ -125,6 +495,63 @@ public class RestGetClientJavaIntegrationTest {
 		}
 	}	
 	
+	@Test public void testGetSuccessStatuses() throws IOException {
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				int status = Integer.parseInt(e.getRequestURI().getPath().substring(1));
+				if (status == 204) {
+					e.sendResponseHeaders(status, -1);
+				} else {
+					e.sendResponseHeaders(status, 0);
+					e.getResponseBody().write(("status " + status).getBytes());
+				}
+				e.close();
+			}
+		});
+		server.start();
+		RestClient client = client();
+		for (int status : new int[] {201, 203, 206}) {
+			RestResponseBean response = new RestResponseBean();
+			client.get("/" + status, response);
+			assertEquals(status, response.getHeaders().getStatus());
+			assertEquals("status " + status, response.getBody());
+		}
+		RestResponseBean noContent = new RestResponseBean();
+		client.get("/204", noContent);
+		assertEquals(204, noContent.getHeaders().getStatus());
+		assertEquals("", noContent.getBody());
+	}
+	
+	@Test public void testGetServerErrorTruncated() throws IOException {
+		final byte[] page = new byte[1024 * 1024];
+		Arrays.fill(page, (byte) 0xE4); // a with diaeresis in ISO-8859-1
+		server.createContext("/").setHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange e) throws IOException {
+				e.getResponseHeaders().add("Content-Type", "text/plain; charset=ISO-8859-1");
+				e.sendResponseHeaders(500, 0);
+				try {
+					e.getResponseBody().write(page);
+				} catch (IOException ex) {
+					// client discarded the rest
+				}
+				e.close();
+			}
+		});
+		server.start();
+		RestClientJavaHttpConfig config = new RestClientJavaHttpConfig();
+		config.setMaxErrorBody(16);
+		RestClient client = new RestClientJavaHttp(server.getRoot().toString(), null, config);
+		try {
+			client.get("/", new RestResponseBean());
+			fail("Should throw status error on 500");
+		} catch (HttpStatusError e) {
+			assertTrue(e.isTruncated());
+			assertEquals("\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4", e.getResponse());
+		}
+	}
+	
 	@Test public void testHead() throws IOException {
 		server.createContext("/").setHandler(new HttpHandler() {
 			@Override
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.javase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import se.repos.restclient.RestClient;
+
+/**
+ * Runs the interface contract tests with the HttpClient instances on the virtual thread executor.
+ */
+public class RestGetClientJavaVirtualThreadsIntegrationTest extends RestGetClientJavaIntegrationTest {
+
+	@Override
+	RestClient client() {
+		return new RestClientJavaHttp(server.getRoot().toString(), null, true);
+	}
+
+	@Override
+	RestClient clientBogusHost() {
+		return new RestClientJavaHttp("http://bogus.simonsoft.se", null, true);
+	}
+	
+	@Test public void testHeadOnExecutor() throws Exception {
+		server.start();
+		final RestClientJavaHttp client = (RestClientJavaHttp) client();
+		assertNotNull(client.getExecutor());
+		Future<Integer> status = client.getExecutor().submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return client.head("/").getStatus();
+			}
+		});
+		assertEquals(200, status.get().intValue());
+	}
+	
+	@Test public void testClose() throws Exception {
+		server.start();
+		RestClientJavaHttp client = (RestClientJavaHttp) client();
+		client.close();
+		assertTrue(client.getExecutor().isShutdown());
+		RestClientJavaHttp defaultExecutor = new RestClientJavaHttp(server.getRoot().toString(), null);
+		defaultExecutor.close();
+		assertNull(defaultExecutor.getExecutor());
+	}
+	
+}
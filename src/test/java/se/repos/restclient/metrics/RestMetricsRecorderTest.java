@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.metrics;
+
+import static org.junit.Assert.*;
+
+import java.net.UnknownHostException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.javase.RestClientJavaHttp;
+import se.repos.restclient.server.UnitHttpServer;
+
+public class RestMetricsRecorderTest {
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentile(99));
+		for (int i = 1; i <= 1000; i++) {
+			h.record(i * 1000L);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000000, h.getMax());
+		long p50 = h.getPercentile(50);
+		assertTrue("Got " + p50, p50 >= 500000 && p50 < 500000 * 1.125);
+		long p99 = h.getPercentile(99);
+		assertTrue("Got " + p99, p99 >= 990000 && p99 <= 1000000);
+		assertEquals(1000000, h.getPercentile(100));
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		for (long v : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+			int i = LatencyHistogram.index(v);
+			assertTrue("Value " + v + " above bucket " + i, v <= LatencyHistogram.upperBound(i));
+			assertTrue("Value " + v + " in bucket " + i, i == 0 || v > LatencyHistogram.upperBound(i - 1));
+		}
+	}
+
+	@Test
+	public void testRecorder() throws Exception {
+		UnitHttpServer server = UnitHttpServer.create();
+		server.start();
+		try {
+			RestClientJavaHttp client = new RestClientJavaHttp(server.getRoot().toString(), null);
+			RestMetricsRecorder metrics = new RestMetricsRecorder();
+			client.setRequestListener(metrics);
+			metrics.registerGauge("test.gauge", () -> 7);
+			RestResponseBean response = new RestResponseBean();
+			client.get("/a", response);
+			client.head("/b");
+			client.headAsync("/c").join();
+
+			assertEquals(1, metrics.getTotalHistogram("GET").getCount());
+			assertEquals(1, metrics.getFirstByteHistogram("GET").getCount());
+			assertTrue(metrics.getFirstByteHistogram("GET").getMax() <= metrics.getTotalHistogram("GET").getMax());
+			assertEquals(response.getBody().getBytes("UTF-8").length, metrics.getBytes("GET"));
+			assertEquals(1, metrics.getStatusCount("GET", 2));
+			assertEquals(2, metrics.getStatusCount("HEAD", 2));
+
+			Map<String, Long> snapshot = metrics.snapshot();
+			assertEquals(Long.valueOf(2), snapshot.get("HEAD.total.count"));
+			assertEquals(Long.valueOf(0), snapshot.get("GET.failed"));
+			assertEquals(Long.valueOf(7), snapshot.get("test.gauge"));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testRecorderFailure() throws Exception {
+		RestClientJavaHttp client = new RestClientJavaHttp("http://host.invalid", null);
+		RestMetricsRecorder metrics = new RestMetricsRecorder();
+		client.setRequestListener(metrics);
+		try {
+			client.get("/", new RestResponseBean());
+			fail("Should throw");
+		} catch (UnknownHostException e) {
+			// expected
+		} catch (HttpStatusError e) {
+			fail("Unexpected " + e);
+		}
+		assertEquals(1, metrics.getExceptionCount(UnknownHostException.class.getName()));
+		assertEquals(Long.valueOf(1), metrics.snapshot().get("GET.failed"));
+		assertEquals(0, metrics.getFirstByteHistogram("GET").getCount());
+	}
+
+}
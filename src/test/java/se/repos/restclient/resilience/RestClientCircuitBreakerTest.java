@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.metrics.RestMetricsRecorder;
+import se.repos.restclient.resilience.RestClientCircuitBreaker.State;
+
+public class RestClientCircuitBreakerTest {
+
+	static class SwitchingClient implements RestClient {
+		int gets = 0;
+		int status = 200;
+		boolean down = false;
+		long delay = 0;
+		@Override
+		public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+			gets++;
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (down) {
+				throw new ConnectException("Connection refused");
+			}
+			ResponseHeaders headers = mock(ResponseHeaders.class);
+			when(headers.getStatus()).thenReturn(status);
+			if (status != 200) {
+				throw new HttpStatusError(uri, headers, "error");
+			}
+			response.getResponseStream(headers).write("ok".getBytes());
+		}
+		@Override
+		public ResponseHeaders head(String uri) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private int get(RestClient client, int times) {
+		int failed = 0;
+		for (int i = 0; i < times; i++) {
+			try {
+				client.get("/a", new RestResponseBean());
+			} catch (IOException e) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	@Test
+	public void testOpenAndClose() throws Exception {
+		SwitchingClient http = new SwitchingClient();
+		RestClientCircuitBreaker breaker = new RestClientCircuitBreaker(http, 10);
+		breaker.setFailureThreshold(4, 50);
+		breaker.setOpenDuration(100, 2);
+		get(breaker, 4);
+		http.down = true;
+		get(breaker, 4);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(8, http.gets);
+
+		try {
+			breaker.get("/a", new RestResponseBean());
+			fail("Should fail fast while open");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+		assertEquals(8, http.gets);
+		assertEquals(1, breaker.getRejectedCount());
+
+		Thread.sleep(150);
+		assertEquals("Half-open trial failure should reopen", 1, get(breaker, 1));
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(9, http.gets);
+
+		http.down = false;
+		Thread.sleep(150);
+		assertEquals(0, get(breaker, 1));
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertEquals(0, get(breaker, 1));
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(2, breaker.getOpenedCount());
+	}
+
+	@Test
+	public void testClientErrorsNotFailures() throws Exception {
+		SwitchingClient http = new SwitchingClient();
+		http.status = 404;
+		RestClientCircuitBreaker breaker = new RestClientCircuitBreaker(http, 10);
+		breaker.setFailureThreshold(4, 50);
+		assertEquals(10, get(breaker, 10));
+		assertEquals(State.CLOSED, breaker.getState());
+		http.status = 503;
+		get(breaker, 10);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void testSlow() throws Exception {
+		SwitchingClient http = new SwitchingClient();
+		http.delay = 20;
+		RestClientCircuitBreaker breaker = new RestClientCircuitBreaker(http, 4);
+		breaker.setFailureThreshold(4, 50);
+		breaker.setSlowThreshold(10, 75);
+		assertEquals(0, get(breaker, 4));
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		SwitchingClient http = new SwitchingClient();
+		http.down = true;
+		RestClientCircuitBreaker breaker = new RestClientCircuitBreaker(http, 4);
+		breaker.setFailureThreshold(2, 100);
+		RestMetricsRecorder metrics = new RestMetricsRecorder();
+		breaker.registerMetrics(metrics, "server1");
+		assertEquals(Long.valueOf(0), metrics.snapshot().get("server1.breaker.state"));
+		get(breaker, 3);
+		Map<String, Long> s = metrics.snapshot();
+		assertEquals(Long.valueOf(State.OPEN.ordinal()), s.get("server1.breaker.state"));
+		assertEquals(Long.valueOf(1), s.get("server1.breaker.rejected"));
+		assertEquals(Long.valueOf(1), s.get("server1.breaker.opened"));
+	}
+
+}
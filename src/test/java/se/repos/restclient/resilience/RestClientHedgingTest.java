@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestAsyncClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.metrics.LatencyHistogram;
+
+public class RestClientHedgingTest {
+
+	/**
+	 * Responds after the next delay in line, a negative delay fails without response.
+	 */
+	static class DelayingClient implements RestAsyncClient {
+		final LinkedList<Long> delays = new LinkedList<Long>();
+		int sent = 0;
+		final ResponseHeaders headers;
+		DelayingClient(Long... delays) {
+			this.delays.addAll(Arrays.asList(delays));
+			headers = mock(ResponseHeaders.class);
+			when(headers.getStatus()).thenReturn(200);
+		}
+		private synchronized long next() {
+			return delays.isEmpty() ? 0 : delays.removeFirst();
+		}
+		private void sleep(long delay) {
+			try {
+				Thread.sleep(Math.abs(delay));
+			} catch (InterruptedException e) {
+				throw new CompletionException(e);
+			}
+			if (delay < 0) {
+				throw new CompletionException(new ConnectException("refused"));
+			}
+		}
+		@Override
+		public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+			final long delay = next();
+			final int attempt = ++sent;
+			return CompletableFuture.runAsync(() -> {
+				sleep(delay);
+				try {
+					OutputStream out = response.getResponseStream(headers);
+					out.write(("attempt " + attempt).getBytes());
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			});
+		}
+		@Override
+		public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+			final long delay = next();
+			sent++;
+			return CompletableFuture.supplyAsync(() -> {
+				sleep(delay);
+				return headers;
+			});
+		}
+	}
+
+	private RestClientHedging hedging(DelayingClient http, long delayMillis) {
+		RestClientHedging client = new RestClientHedging(http);
+		LatencyHistogram latency = new LatencyHistogram();
+		for (int i = 0; i < 20; i++) {
+			latency.record(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+		}
+		client.setLatencyHistogram(latency);
+		client.setDelay(95, 1);
+		return client;
+	}
+
+	@Test
+	public void testHedgeWins() throws Exception {
+		DelayingClient http = new DelayingClient(500L, 10L);
+		RestClientHedging client = hedging(http, 20);
+		RestResponseBean response = new RestResponseBean();
+		long start = System.nanoTime();
+		client.get("/a", response);
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+		assertEquals("attempt 2", response.getBody());
+		assertEquals(1, client.getHedgedCount());
+		assertEquals(1, client.getHedgeWinCount());
+		Thread.sleep(600);
+		assertEquals("Loser must not write to the caller's response", "attempt 2", response.getBody());
+	}
+
+	@Test
+	public void testLoserCancelledBeforeBody() throws Exception {
+		final List<CompletableFuture<Void>> attempts = new ArrayList<CompletableFuture<Void>>();
+		DelayingClient http = new DelayingClient(500L, 10L) {
+			@Override
+			public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+				CompletableFuture<Void> f = super.getAsync(uri, response);
+				synchronized (attempts) {
+					attempts.add(f);
+				}
+				return f;
+			}
+		};
+		RestClientHedging client = hedging(http, 20);
+		final boolean[] cancelled = new boolean[1];
+		client.get("/a", new RestResponseBean() {
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				synchronized (attempts) {
+					cancelled[0] = attempts.get(0).isCancelled();
+				}
+				return super.getResponseStream(headers);
+			}
+		});
+		assertTrue("Loser should be cancelled when the winner's body starts", cancelled[0]);
+	}
+
+	@Test
+	public void testFastNotHedged() throws Exception {
+		DelayingClient http = new DelayingClient(0L);
+		RestClientHedging client = hedging(http, 100);
+		RestResponseBean response = new RestResponseBean();
+		client.get("/a", response);
+		assertEquals("attempt 1", response.getBody());
+		assertEquals(1, http.sent);
+		assertEquals(0, client.getHedgedCount());
+	}
+
+	@Test
+	public void testNoHedgeWithoutSamples() throws Exception {
+		DelayingClient http = new DelayingClient(50L);
+		RestClientHedging client = new RestClientHedging(http);
+		client.get("/a", new RestResponseBean());
+		assertEquals(1, http.sent);
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		DelayingClient http = new DelayingClient(50L, 50L, 50L);
+		RestClientHedging client = new RestClientHedging(http, new RetryBudget(0, 1));
+		LatencyHistogram latency = new LatencyHistogram();
+		for (int i = 0; i < 20; i++) {
+			latency.record(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		client.setLatencyHistogram(latency);
+		client.setDelay(95, 1);
+		client.get("/a", new RestResponseBean());
+		client.get("/a", new RestResponseBean());
+		assertEquals(3, http.sent);
+		assertEquals(1, client.getHedgedCount());
+		assertEquals(1, client.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void testFirstFailsHedgeUsed() throws Exception {
+		DelayingClient http = new DelayingClient(-100L, 200L);
+		RestClientHedging client = hedging(http, 20);
+		RestResponseBean response = new RestResponseBean();
+		client.get("/a", response);
+		assertEquals("attempt 2", response.getBody());
+	}
+
+	@Test
+	public void testBothFail() throws Exception {
+		DelayingClient http = new DelayingClient(-100L, -50L);
+		RestClientHedging client = hedging(http, 20);
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should fail when no attempt gets a response");
+		} catch (ConnectException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHead() throws Exception {
+		DelayingClient http = new DelayingClient(500L, 0L);
+		RestClientHedging client = hedging(http, 20);
+		long start = System.nanoTime();
+		assertSame(http.headers, client.head("/a"));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+		assertEquals(1, client.getHedgeWinCount());
+	}
+
+	@Test
+	public void testRecordsOwnLatency() throws Exception {
+		DelayingClient http = new DelayingClient();
+		RestClientHedging client = new RestClientHedging(http);
+		client.setMinSamples(3);
+		assertEquals(-1, client.getDelayNanos());
+		for (int i = 0; i < 3; i++) {
+			client.get("/a", new RestResponseBean());
+		}
+		assertTrue(client.getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(RestClientHedging.DEFAULT_MIN_DELAY_MILLIS));
+	}
+
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestAsyncClient;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseBean;
+
+public class RestClientLimiterTest {
+
+	static class GatedClient implements RestClient {
+		final AtomicInteger gets = new AtomicInteger();
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release;
+		final ResponseHeaders headers;
+		GatedClient(CountDownLatch release, int status) {
+			this.release = release;
+			headers = mock(ResponseHeaders.class);
+			when(headers.getStatus()).thenReturn(status);
+		}
+		@Override
+		public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+			gets.incrementAndGet();
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				concurrent.decrementAndGet();
+			}
+			if (headers.getStatus() != 200) {
+				throw new HttpStatusError(uri, headers, "error");
+			}
+			response.getResponseStream(headers).write("ok".getBytes());
+		}
+		@Override
+		public ResponseHeaders head(String uri) throws IOException {
+			return headers;
+		}
+	}
+
+	@Test
+	public void testReject() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		GatedClient http = new GatedClient(release, 200);
+		final RestClientLimiter client = new RestClientLimiter(http, null, new ConcurrencyLimiter(1, 1, 1), Runnable::run);
+		client.setMode(RestClientLimiter.Mode.REJECT);
+		ExecutorService threads = Executors.newSingleThreadExecutor();
+		threads.submit(() -> {
+			client.get("/a", new RestResponseBean());
+			return null;
+		});
+		while (http.gets.get() == 0) {
+			Thread.sleep(5);
+		}
+		try {
+			client.get("/b", new RestResponseBean());
+			fail("Should reject above concurrency limit");
+		} catch (RequestRejectedException e) {
+			// expected
+		}
+		release.countDown();
+		threads.shutdown();
+		threads.awaitTermination(5, TimeUnit.SECONDS);
+		client.get("/c", new RestResponseBean());
+		assertEquals(2, http.gets.get());
+		assertEquals(1, client.getRejectedCount());
+	}
+
+	@Test
+	public void testBlock() throws Exception {
+		GatedClient http = new GatedClient(new CountDownLatch(0), 200);
+		final RestClientLimiter client = new RestClientLimiter(http, null, new ConcurrencyLimiter(2, 2, 2), Runnable::run);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<java.util.concurrent.Future<?>> results = new ArrayList<java.util.concurrent.Future<?>>();
+		for (int i = 0; i < 20; i++) {
+			results.add(threads.submit(() -> {
+				client.get("/a", new RestResponseBean());
+				return null;
+			}));
+		}
+		for (java.util.concurrent.Future<?> f : results) {
+			f.get();
+		}
+		threads.shutdown();
+		assertEquals(20, http.gets.get());
+		assertTrue(http.maxConcurrent.get() <= 2);
+	}
+
+	@Test
+	public void testRate() throws Exception {
+		GatedClient http = new GatedClient(new CountDownLatch(0), 200);
+		RestClientLimiter client = new RestClientLimiter(http, new RateLimiter(20, 2), null, Runnable::run);
+		client.setMaxWait(10);
+		client.get("/a", new RestResponseBean());
+		client.get("/a", new RestResponseBean());
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Burst should be used up, next permit in 50 ms");
+		} catch (RequestRejectedException e) {
+			// expected
+		}
+		client.setMaxWait(100);
+		client.get("/a", new RestResponseBean());
+		assertEquals(3, http.gets.get());
+	}
+
+	@Test
+	public void testAsyncQueue() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		GatedClient http = new GatedClient(release, 200);
+		ExecutorService threads = Executors.newCachedThreadPool();
+		RestClientLimiter client = new RestClientLimiter(http, null, new ConcurrencyLimiter(2, 2, 2), threads);
+		client.setMaxQueued(5);
+		List<CompletableFuture<Void>> results = new ArrayList<CompletableFuture<Void>>();
+		List<RestResponseBean> responses = new ArrayList<RestResponseBean>();
+		for (int i = 0; i < 8; i++) {
+			RestResponseBean r = new RestResponseBean();
+			responses.add(r);
+			results.add(client.getAsync("/a", r));
+		}
+		assertEquals(5, client.getQueueSize());
+		try {
+			results.get(7).get();
+			fail("Queue should be full");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RequestRejectedException);
+		}
+		assertTrue("Both permitted requests should be in flight", http.started.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		for (int i = 0; i < 7; i++) {
+			results.get(i).get(5, TimeUnit.SECONDS);
+			assertEquals("ok", responses.get(i).getBody());
+		}
+		threads.shutdown();
+		assertEquals(7, http.gets.get());
+		assertEquals(2, http.maxConcurrent.get());
+		assertEquals(5, client.getQueuedCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBlockingClientRequiresExecutor() {
+		new RestClientLimiter(new GatedClient(new CountDownLatch(0), 200), null, new ConcurrencyLimiter(1, 1, 1));
+	}
+
+	@Test
+	public void testInterruptedReleasesPermit() throws Exception {
+		GatedClient http = new GatedClient(new CountDownLatch(0), 200);
+		ConcurrencyLimiter concurrency = new ConcurrencyLimiter(1, 1, 1);
+		RestClientLimiter client = new RestClientLimiter(http, new RateLimiter(1, 1), concurrency, Runnable::run);
+		client.get("/a", new RestResponseBean());
+		Thread.currentThread().interrupt();
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should be interrupted while waiting for rate");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof InterruptedException);
+		}
+		assertTrue("Should restore interrupt flag", Thread.interrupted());
+		assertEquals("Should release the concurrency permit", 0, concurrency.getInFlight());
+	}
+
+	@Test
+	public void testDrainCompletedNotNested() throws Exception {
+		final CompletableFuture<Void> first = new CompletableFuture<Void>();
+		final List<Integer> depths = new ArrayList<Integer>();
+		class ImmediateClient extends GatedClient implements RestAsyncClient {
+			ImmediateClient() {
+				super(new CountDownLatch(0), 200);
+			}
+			@Override
+			public CompletableFuture<Void> getAsync(String uri, RestResponse response) {
+				depths.add(Thread.currentThread().getStackTrace().length);
+				return depths.size() == 1 ? first : CompletableFuture.completedFuture(null);
+			}
+			@Override
+			public CompletableFuture<ResponseHeaders> headAsync(String uri) {
+				throw new UnsupportedOperationException();
+			}
+		}
+		RestClientLimiter client = new RestClientLimiter(new ImmediateClient(), null, new ConcurrencyLimiter(1, 1, 1));
+		List<CompletableFuture<Void>> results = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 500; i++) {
+			results.add(client.getAsync("/a", new RestResponseBean()));
+		}
+		assertEquals(499, client.getQueueSize());
+		first.complete(null);
+		for (CompletableFuture<Void> r : results) {
+			assertTrue(r.isDone());
+		}
+		assertEquals(500, depths.size());
+		assertEquals("Queued requests should start in a loop", depths.get(1), depths.get(499));
+	}
+
+	@Test
+	public void testAimd() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+		limiter.setBackoffRatio(0.5);
+		GatedClient http = new GatedClient(new CountDownLatch(0), 503);
+		RestClientLimiter client = new RestClientLimiter(http, null, limiter, Runnable::run);
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should pass on status error");
+		} catch (HttpStatusError e) {
+			assertEquals(503, e.getHttpStatus());
+		}
+		assertEquals(5, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+
+		for (int round = 0; round < 10; round++) {
+			int acquired = 0;
+			while (limiter.tryAcquire()) {
+				acquired++;
+			}
+			assertEquals(limiter.getLimit(), acquired);
+			for (int i = 0; i < acquired; i++) {
+				limiter.release(0, false);
+			}
+		}
+		assertTrue("Should increase while the limit is used", limiter.getLimit() > 5);
+	}
+
+	@Test
+	public void testTimeoutDecreases() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20);
+		limiter.setBackoffRatio(0.5);
+		RestClient http = new GatedClient(new CountDownLatch(0), 200) {
+			@Override
+			public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+				throw new HttpConnectTimeoutException("HTTP connect timed out");
+			}
+			@Override
+			public ResponseHeaders head(String uri) throws IOException {
+				throw new HttpTimeoutException("request timed out");
+			}
+		};
+		RestClientLimiter client = new RestClientLimiter(http, null, limiter, Runnable::run);
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should pass on the timeout");
+		} catch (HttpTimeoutException e) {
+			assertEquals(5, limiter.getLimit());
+		}
+		try {
+			client.head("/a");
+			fail("Should pass on the timeout");
+		} catch (HttpTimeoutException e) {
+			assertEquals(2, limiter.getLimit());
+		}
+		assertEquals(0, limiter.getInFlight());
+	}
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2004-2012 Repos Mjukvara AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.repos.restclient.resilience;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.repos.restclient.HttpStatusError;
+import se.repos.restclient.ResponseHeaders;
+import se.repos.restclient.RestClient;
+import se.repos.restclient.RestResponse;
+import se.repos.restclient.RestResponseAccept;
+import se.repos.restclient.RestResponseBean;
+import se.repos.restclient.RestResponseChannel;
+import se.repos.restclient.RestResponsePublisher;
+import se.repos.restclient.RestResponseRange;
+import se.repos.restclient.base.ResponseHeadersMap;
+
+public class RestClientRetryTest {
+
+	/**
+	 * Fails a number of times, then succeeds.
+	 */
+	static class FailingClient implements RestClient {
+		final AtomicInteger gets = new AtomicInteger();
+		final AtomicInteger heads = new AtomicInteger();
+		final int failures;
+		final ResponseHeaders ok;
+		final ResponseHeaders error;
+		boolean partialBody = false;
+		FailingClient(int failures, int status) {
+			this.failures = failures;
+			ok = mock(ResponseHeaders.class);
+			when(ok.getStatus()).thenReturn(200);
+			error = mock(ResponseHeaders.class);
+			when(error.getStatus()).thenReturn(status);
+		}
+		@Override
+		public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+			if (gets.incrementAndGet() <= failures) {
+				if (partialBody) {
+					response.getResponseStream(ok).write("part".getBytes());
+					throw new IOException("connection reset");
+				}
+				if (error.getStatus() == 0) {
+					throw new ConnectException("refused");
+				}
+				throw new HttpStatusError(uri, error, "error");
+			}
+			response.getResponseStream(ok).write(("body of " + uri).getBytes());
+		}
+		@Override
+		public ResponseHeaders head(String uri) throws IOException {
+			return heads.incrementAndGet() <= failures ? error : ok;
+		}
+	}
+
+	private RestClientRetry retry(RestClient http) {
+		RestClientRetry client = new RestClientRetry(http);
+		client.setBackoff(1, 10);
+		return client;
+	}
+
+	@Test
+	public void testRetryStatus() throws Exception {
+		FailingClient http = new FailingClient(2, 503);
+		RestClientRetry client = retry(http);
+		RestResponseBean response = new RestResponseBean();
+		client.get("/a", response);
+		assertEquals("body of /a", response.getBody());
+		assertEquals(3, http.gets.get());
+		assertEquals(2, client.getRetryCount());
+	}
+
+	@Test
+	public void testRetryConnect() throws Exception {
+		FailingClient http = new FailingClient(1, 0);
+		RestClientRetry client = retry(http);
+		client.get("/a", new RestResponseBean());
+		assertEquals(2, http.gets.get());
+	}
+
+	@Test
+	public void testMaxAttempts() throws Exception {
+		FailingClient http = new FailingClient(5, 504);
+		RestClientRetry client = retry(http);
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should fail after max attempts");
+		} catch (HttpStatusError e) {
+			assertEquals(504, e.getHttpStatus());
+		}
+		assertEquals(RestClientRetry.DEFAULT_MAX_ATTEMPTS, http.gets.get());
+	}
+
+	@Test
+	public void testNotRetryable() throws Exception {
+		FailingClient http = new FailingClient(1, 404);
+		try {
+			retry(http).get("/a", new RestResponseBean());
+			fail("Should not retry 404");
+		} catch (HttpStatusError e) {
+			assertEquals(404, e.getHttpStatus());
+		}
+		assertEquals(1, http.gets.get());
+	}
+
+	@Test
+	public void testNoRetryAfterBodyStarted() throws Exception {
+		FailingClient http = new FailingClient(1, 0);
+		http.partialBody = true;
+		RestResponseBean response = new RestResponseBean();
+		try {
+			retry(http).get("/a", response);
+			fail("Should not retry once the body has been written to");
+		} catch (IOException e) {
+			assertEquals("connection reset", e.getMessage());
+		}
+		assertEquals(1, http.gets.get());
+		assertEquals("part", response.getBody());
+	}
+
+	@Test
+	public void testResponseInterfacesKept() throws Exception {
+		final RestResponse[] received = new RestResponse[1];
+		RestClient http = new FailingClient(0, 0) {
+			@Override
+			public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+				received[0] = response;
+				super.get(uri, response);
+			}
+		};
+		retry(http).get("/a", new RestResponseBean());
+		assertNull(((RestResponseAccept) received[0]).getAccept());
+		assertFalse(received[0] instanceof RestResponseRange);
+		assertFalse(received[0] instanceof RestResponseChannel);
+
+		RestResponseAccept response = new RestResponseAccept() {
+			@Override
+			public OutputStream getResponseStream(ResponseHeaders headers) {
+				return new ByteArrayOutputStream();
+			}
+			@Override
+			public String getAccept() {
+				return "text/plain";
+			}
+		};
+		retry(http).get("/a", response);
+		assertTrue(received[0] instanceof RestResponseAccept);
+		assertEquals("text/plain", ((RestResponseAccept) received[0]).getAccept());
+	}
+
+	private interface RangeChannelResponse extends RestResponseRange, RestResponseChannel {
+	}
+
+	@Test
+	public void testResponseInterfacesNotPublic() throws Exception {
+		final RestResponse[] received = new RestResponse[1];
+		RestClient http = new FailingClient(0, 0) {
+			@Override
+			public void get(String uri, RestResponse response) throws IOException, HttpStatusError {
+				received[0] = response;
+				((RestResponseChannel) response).getResponseChannel(ok).write(ByteBuffer.wrap("part".getBytes()));
+			}
+		};
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		retry(http).get("/a", new RangeChannelResponse() {
+			@Override
+			public long getRangeStart() {
+				return 10;
+			}
+			@Override
+			public long getRangeEnd() {
+				return -1;
+			}
+			@Override
+			public String getIfRange() {
+				return "\"1\"";
+			}
+			@Override
+			public WritableByteChannel getResponseChannel(ResponseHeaders headers) {
+				return Channels.newChannel(body);
+			}
+		});
+		assertTrue(received[0] instanceof RestResponseRange);
+		assertEquals(10, ((RestResponseRange) received[0]).getRangeStart());
+		assertEquals(-1, ((RestResponseRange) received[0]).getRangeEnd());
+		assertEquals("\"1\"", ((RestResponseRange) received[0]).getIfRange());
+		assertFalse(received[0] instanceof RestResponsePublisher);
+		assertEquals("part", body.toString());
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		FailingClient http = new FailingClient(100, 503);
+		RestClientRetry client = new RestClientRetry(http, new RetryBudget(0, 2));
+		client.setBackoff(1, 10);
+		client.setMaxAttempts(10);
+		try {
+			client.get("/a", new RestResponseBean());
+			fail("Should fail when budget is exhausted");
+		} catch (HttpStatusError e) {
+			assertEquals(503, e.getHttpStatus());
+		}
+		assertEquals(3, http.gets.get());
+		assertEquals(1, client.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void testBudgetDeposit() {
+		RetryBudget budget = new RetryBudget(0.5, 1);
+		assertTrue(budget.tryRetry());
+		assertFalse(budget.tryRetry());
+		budget.onRequest();
+		assertFalse(budget.tryRetry());
+		budget.onRequest();
+		budget.onRequest();
+		assertTrue("Capacity should limit deposits", budget.tryRetry());
+		assertFalse(budget.tryRetry());
+	}
+
+	@Test
+	public void testRetryHead() throws Exception {
+		FailingClient http = new FailingClient(1, 502);
+		assertEquals(200, retry(http).head("/a").getStatus());
+		assertEquals(2, http.heads.get());
+
+		http = new FailingClient(1, 502);
+		RestClientRetry client = retry(http);
+		client.setRetryHead(false);
+		assertEquals(502, client.head("/a").getStatus());
+	}
+
+	@Test
+	public void testRetryAfter() throws Exception {
+		ResponseHeaders headers = mock(ResponseHeaders.class);
+		when(headers.getFirst("Retry-After")).thenReturn("2");
+		assertEquals(2000, RestClientRetry.getRetryAfterMillis(headers));
+		when(headers.getFirst("Retry-After")).thenReturn("Wed, 21 Oct 2015 07:28:00 GMT");
+		assertEquals("Date in the past", 0, RestClientRetry.getRetryAfterMillis(headers));
+		when(headers.getFirst("Retry-After")).thenReturn(null);
+		assertEquals(0, RestClientRetry.getRetryAfterMillis(headers));
+		ResponseHeaders lowercase = new ResponseHeadersMap(Collections.singletonMap("retry-after", Arrays.asList("1"))) {
+			@Override
+			public int getStatus() {
+				return 503;
+			}
+			@Override
+			public String getContentType() {
+				return null;
+			}
+		};
+		assertEquals("Header names are case insensitive", 1000, RestClientRetry.getRetryAfterMillis(lowercase));
+
+		FailingClient http = new FailingClient(1, 503);
+		when(http.error.getFirst("Retry-After")).thenReturn("3600");
+		try {
+			retry(http).get("/a", new RestResponseBean());
+			fail("Should not wait for Retry-After above max backoff");
+		} catch (HttpStatusError e) {
+			assertEquals(503, e.getHttpStatus());
+		}
+		assertEquals(1, http.gets.get());
+	}
+
+}